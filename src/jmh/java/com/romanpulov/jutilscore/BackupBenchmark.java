@@ -0,0 +1,48 @@
+package com.romanpulov.jutilscore;
+
+import com.romanpulov.jutilscore.io.FileUtils;
+import com.romanpulov.jutilscore.storage.BackupUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BackupBenchmark {
+    private static final String BACKUP_FILE_NAME = "data-backup.bin";
+
+    @Param({"2", "5", "20"})
+    public int retentionCount;
+
+    private String backupFolderName;
+    private String restoreFileName;
+
+    @Setup(Level.Trial)
+    public void setup(DataFileState data) throws Exception {
+        FileUtils.setFileKeepCopiesCount(retentionCount);
+        backupFolderName = data.folder.resolve("backup").toString();
+        restoreFileName = data.folder.resolve("restore.bin").toString();
+
+        //restore needs an archive, rotation runs with all copies present
+        for (int i = 0; i <= retentionCount; i++) {
+            if (BackupUtils.createRollingLocalBackup(data.dataFile.toString(), backupFolderName, BACKUP_FILE_NAME) == null)
+                throw new IllegalStateException("Error creating backup");
+        }
+    }
+
+    @Benchmark
+    public String createRollingLocalBackup(DataFileState data, ThroughputCounters counters) {
+        counters.megabytes += data.getMegabytes();
+        return BackupUtils.createRollingLocalBackup(data.dataFile.toString(), backupFolderName, BACKUP_FILE_NAME);
+    }
+
+    @Benchmark
+    public String restoreBackup(DataFileState data, ThroughputCounters counters) {
+        counters.megabytes += data.getMegabytes();
+        return BackupUtils.restoreBackup(restoreFileName, backupFolderName, BACKUP_FILE_NAME);
+    }
+}
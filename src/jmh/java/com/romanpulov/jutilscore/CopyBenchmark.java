@@ -0,0 +1,32 @@
+package com.romanpulov.jutilscore;
+
+import com.romanpulov.jutilscore.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CopyBenchmark {
+
+    @Benchmark
+    public boolean copy(DataFileState data, ThroughputCounters counters) {
+        counters.megabytes += data.getMegabytes();
+        return FileUtils.copy(data.dataFile.toString(), data.folder.resolve("copy.bin").toString());
+    }
+
+    @Benchmark
+    public void copyStreamWithZip(DataFileState data, ThroughputCounters counters) throws IOException {
+        counters.megabytes += data.getMegabytes();
+        try (InputStream inputStream = new FileInputStream(data.dataFile.toFile())) {
+            FileUtils.copyStreamWithZip(DataFileState.DATA_FILE_NAME, inputStream, OutputStream.nullOutputStream());
+        }
+    }
+}
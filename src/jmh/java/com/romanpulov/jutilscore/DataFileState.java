@@ -0,0 +1,99 @@
+package com.romanpulov.jutilscore;
+
+import com.romanpulov.jutilscore.io.ZipFileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Data file of given size and compressibility with its zip archive, shared by benchmarks
+ */
+@State(Scope.Benchmark)
+public class DataFileState {
+    public static final String DATA_FILE_NAME = "data.bin";
+
+    private static final String[] WORDS = {
+            "backup", "restore", "archive", "file", "stream", "data", "copy", "rotate",
+            "index", "entry", "the", "of", "and", "to", "with", "from", "2024-01-01", "12:00:00"
+    };
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long fileSize;
+
+    @Param({"random", "text", "zeros"})
+    public String compressibility;
+
+    public Path folder;
+    public Path dataFile;
+    public Path zipFolder;
+    public Path zipFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("jutils-core-jmh");
+        dataFile = folder.resolve(DATA_FILE_NAME);
+        writeDataFile(dataFile, fileSize, compressibility);
+
+        //archive in a separate folder, so unzip does not overwrite the data file
+        zipFolder = Files.createDirectory(folder.resolve("zip"));
+        Files.copy(dataFile, zipFolder.resolve(DATA_FILE_NAME));
+        zipFile = Path.of(ZipFileUtils.zipFile(zipFolder.toString() + "/", DATA_FILE_NAME));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    public double getMegabytes() {
+        return fileSize / (1024.0 * 1024.0);
+    }
+
+    private static void writeDataFile(Path path, long size, String compressibility) throws IOException {
+        Random random = new Random(42);
+        byte[] block = new byte[64 * 1024];
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            long remaining = size;
+            while (remaining > 0) {
+                switch (compressibility) {
+                    case "random":
+                        random.nextBytes(block);
+                        break;
+                    case "text":
+                        fillText(block, random);
+                        break;
+                    case "zeros":
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown compressibility " + compressibility);
+                }
+                int len = (int) Math.min(block.length, remaining);
+                outputStream.write(block, 0, len);
+                remaining -= len;
+            }
+        }
+    }
+
+    private static void fillText(byte[] block, Random random) {
+        int pos = 0;
+        while (pos < block.length) {
+            byte[] word = (WORDS[random.nextInt(WORDS.length)] + (random.nextInt(10) == 0 ? "\n" : " "))
+                    .getBytes(StandardCharsets.US_ASCII);
+            int len = Math.min(word.length, block.length - pos);
+            System.arraycopy(word, 0, block, pos, len);
+            pos += len;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.romanpulov.jutilscore;
+
+import com.romanpulov.jutilscore.process.ProcessExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessExecutorBenchmark {
+    private String[] command;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        command = System.getProperty("os.name").toLowerCase().startsWith("windows") ?
+                new String[] {"cmd.exe", "/c", "echo", "benchmark"} :
+                new String[] {"echo", "benchmark"};
+    }
+
+    @Benchmark
+    public ProcessExecutor.ExecutionResult executeCommand() throws Exception {
+        return ProcessExecutor.executeCommand(command);
+    }
+}
@@ -0,0 +1,17 @@
+package com.romanpulov.jutilscore;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Processed data counter, reported by JMH as MB/s next to the operation rate
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ThroughputCounters {
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+    }
+}
@@ -0,0 +1,40 @@
+package com.romanpulov.jutilscore;
+
+import com.romanpulov.jutilscore.io.ZipFileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ZipBenchmark {
+
+    @Benchmark
+    public void zipStream(DataFileState data, ThroughputCounters counters) throws IOException {
+        counters.megabytes += data.getMegabytes();
+        try (InputStream inputStream = new FileInputStream(data.dataFile.toFile())) {
+            ZipFileUtils.zipStream(DataFileState.DATA_FILE_NAME, inputStream, OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public String unZipStream(DataFileState data, ThroughputCounters counters) throws IOException {
+        counters.megabytes += data.getMegabytes();
+        try (InputStream inputStream = new FileInputStream(data.zipFile.toFile())) {
+            return ZipFileUtils.unZipStream(inputStream, OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public boolean unZipFile(DataFileState data, ThroughputCounters counters) {
+        counters.megabytes += data.getMegabytes();
+        return ZipFileUtils.unZipFile(data.zipFolder.toString() + "/", data.zipFile.getFileName().toString());
+    }
+}
@@ -0,0 +1,92 @@
+package com.romanpulov.jutilscore.io;
+
+/**
+ * Per-thread pool of transfer buffers for stream copy routines
+ * Buffer size scales with the known input length between minimum and maximum buffer size
+ */
+
+public class BufferPool {
+    public static final int MIN_BUFFER_SIZE = 64 * 1024;
+    public static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final int THREAD_BUFFER_COUNT = 4;
+
+    private static volatile int mMaxBufferSize = DEFAULT_BUFFER_SIZE;
+
+    private static final ThreadLocal<byte[][]> mThreadBuffers = ThreadLocal.withInitial(() -> new byte[THREAD_BUFFER_COUNT][]);
+
+    /**
+     * Sets maximum buffer size, default is 256 KB
+     * @param value new value, should be between MIN_BUFFER_SIZE and MAX_BUFFER_SIZE
+     */
+    public static void setMaxBufferSize(int value) {
+        if ((value < MIN_BUFFER_SIZE) || (value > MAX_BUFFER_SIZE))
+            throw new RuntimeException("Invalid value for buffer size, should be between " + MIN_BUFFER_SIZE + " and " + MAX_BUFFER_SIZE);
+        mMaxBufferSize = value;
+    }
+
+    public static int getMaxBufferSize() {
+        return mMaxBufferSize;
+    }
+
+    /**
+     * Returns buffer size for the given input length
+     * @param length input length or -1 if unknown
+     * @return buffer size
+     */
+    public static int getBufferSize(long length) {
+        int maxBufferSize = mMaxBufferSize;
+        if ((length < 0) || (length >= maxBufferSize)) {
+            return maxBufferSize;
+        } else if (length <= MIN_BUFFER_SIZE) {
+            return MIN_BUFFER_SIZE;
+        } else {
+            //round up to power of 2
+            return Math.min(Integer.highestOneBit((int) length - 1) << 1, maxBufferSize);
+        }
+    }
+
+    /**
+     * Takes buffer from the pool or allocates a new one
+     * @param length input length or -1 if unknown
+     * @return buffer of at least buffer size for the length
+     */
+    public static byte[] acquire(long length) {
+        int size = getBufferSize(length);
+        byte[][] buffers = mThreadBuffers.get();
+
+        for (int i = 0; i < buffers.length; i++) {
+            byte[] buffer = buffers[i];
+            if ((buffer != null) && (buffer.length >= size)) {
+                buffers[i] = null;
+                return buffer;
+            }
+        }
+
+        return new byte[size];
+    }
+
+    /**
+     * Returns buffer to the pool
+     * @param buffer buffer obtained from acquire
+     */
+    public static void release(byte[] buffer) {
+        if (buffer.length > mMaxBufferSize)
+            return;
+
+        byte[][] buffers = mThreadBuffers.get();
+        int smallestIndex = 0;
+
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == null) {
+                buffers[i] = buffer;
+                return;
+            } else if (buffers[i].length < buffers[smallestIndex].length) {
+                smallestIndex = i;
+            }
+        }
+
+        if (buffers[smallestIndex].length < buffer.length)
+            buffers[smallestIndex] = buffer;
+    }
+}
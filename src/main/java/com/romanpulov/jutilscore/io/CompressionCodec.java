@@ -0,0 +1,60 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compression codec for backup archives
+ */
+
+public interface CompressionCodec {
+    /**
+     * Returns archive file extension
+     * @return extension with leading dot
+     */
+    String getFileExtension();
+
+    /**
+     * Checks if archive header was written by this codec
+     * @param header first bytes of the archive
+     * @param length header length, may be less than CompressionCodecs.HEADER_LENGTH for short archives
+     * @return true if the archive can be decompressed by this codec
+     */
+    boolean acceptsHeader(byte[] header, int length);
+
+    /**
+     * Compresses the input stream and closes the output stream
+     * @param entryName entry name, ignored by formats without entry names
+     * @param inputStream input stream
+     * @param outputStream output stream
+     * @throws IOException in case of errors with streams
+     */
+    void compress(String entryName, InputStream inputStream, OutputStream outputStream) throws IOException;
+
+    /**
+     * Decompresses the input stream and closes it
+     * @param inputStream input stream with compressed content
+     * @param outputStream output stream
+     * @return entry name or null if the format does not keep names
+     * @throws IOException in case of errors with streams or corrupted content
+     */
+    String decompress(InputStream inputStream, OutputStream outputStream) throws IOException;
+
+    /**
+     * Decompresses the archive file to the file, codecs may override it with a faster file based path
+     * @param sourceFileName archive file name
+     * @param destFileName destination file name
+     * @return entry name or null if the format does not keep names
+     * @throws IOException in case of errors with files or corrupted content
+     */
+    default String decompressFile(String sourceFileName, String destFileName) throws IOException {
+        try (InputStream inputStream = ProgressTracker.track(new FileInputStream(sourceFileName));
+             OutputStream outputStream = ProgressTracker.track(new FileOutputStream(destFileName))
+        ) {
+            return decompress(inputStream, outputStream);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Known compression codecs and codec detection
+ */
+
+public class CompressionCodecs {
+    public static final int HEADER_LENGTH = 4;
+
+    public static final CompressionCodec DEFAULT = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+
+    /**
+     * Codecs for each supported archive format, used for detection
+     */
+    private static final List<CompressionCodec> FORMAT_CODECS = List.of(DEFAULT, new Lz4Codec());
+
+    /**
+     * Returns archive extensions of all supported formats
+     * @return extension list
+     */
+    public static List<String> getFileExtensions() {
+        List<String> result = new ArrayList<>(FORMAT_CODECS.size());
+        for (CompressionCodec codec : FORMAT_CODECS) {
+            result.add(codec.getFileExtension());
+        }
+        return result;
+    }
+
+    /**
+     * Detects codec by archive header
+     * @param header first bytes of the archive
+     * @param length header length
+     * @return codec or null if not detected
+     */
+    public static CompressionCodec detectCodec(byte[] header, int length) {
+        for (CompressionCodec codec : FORMAT_CODECS) {
+            if (codec.acceptsHeader(header, length))
+                return codec;
+        }
+        return null;
+    }
+
+    /**
+     * Detects codec of archive file
+     * @param fileName archive file name
+     * @return codec or null if not detected
+     * @throws IOException in case of errors reading the file
+     */
+    public static CompressionCodec detectCodec(String fileName) throws IOException {
+        try (InputStream inputStream = new FileInputStream(fileName)) {
+            byte[] header = new byte[HEADER_LENGTH];
+            int length = 0;
+            int len;
+            while ((length < HEADER_LENGTH) && ((len = inputStream.read(header, length, HEADER_LENGTH - length)) > 0)) {
+                length += len;
+            }
+            return detectCodec(header, length);
+        }
+    }
+}
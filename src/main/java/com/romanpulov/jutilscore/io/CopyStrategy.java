@@ -0,0 +1,16 @@
+package com.romanpulov.jutilscore.io;
+
+/**
+ * Strategy used to copy a file
+ */
+
+public enum CopyStrategy {
+    /**
+     * Copy-on-write clone sharing data blocks with the source, like reflink on btrfs or XFS
+     */
+    CLONE,
+    /**
+     * Data copy with zero-copy channel transfer
+     */
+    TRANSFER
+}
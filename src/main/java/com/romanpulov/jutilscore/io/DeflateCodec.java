@@ -0,0 +1,81 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * ZIP archive codec with deflate compression at the given level
+ * Compression is parallel when thread count is more than 1
+ */
+
+public class DeflateCodec implements CompressionCodec {
+    private static final byte[] ZIP_HEADER = {0x50, 0x4b, 0x03, 0x04};
+
+    private final int mLevel;
+    private final int mThreadCount;
+    private final int mBlockSize;
+
+    /**
+     * @param level deflate level from Deflater.NO_COMPRESSION to Deflater.BEST_COMPRESSION or Deflater.DEFAULT_COMPRESSION
+     */
+    public DeflateCodec(int level) {
+        this(level, 1, ZipFileUtils.DEFAULT_PARALLEL_BLOCK_SIZE);
+    }
+
+    /**
+     * @param level deflate level from Deflater.NO_COMPRESSION to Deflater.BEST_COMPRESSION or Deflater.DEFAULT_COMPRESSION
+     * @param threadCount compression thread count, 1 or less for single threaded compression
+     * @param blockSize block size for parallel compression
+     */
+    public DeflateCodec(int level, int threadCount, int blockSize) {
+        if ((level < -1) || (level > 9))
+            throw new RuntimeException("Invalid value for deflate level, should be between -1 and 9");
+        mLevel = level;
+        mThreadCount = threadCount;
+        mBlockSize = blockSize;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ZipFileUtils.ZIP_EXT;
+    }
+
+    @Override
+    public boolean acceptsHeader(byte[] header, int length) {
+        if (length < ZIP_HEADER.length)
+            return false;
+        for (int i = 0; i < ZIP_HEADER.length; i++) {
+            if (header[i] != ZIP_HEADER[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void compress(String entryName, InputStream inputStream, OutputStream outputStream) throws IOException {
+        ZipFileUtils.zipStream(entryName, inputStream, outputStream, mLevel, mThreadCount, mBlockSize);
+    }
+
+    @Override
+    public String decompress(InputStream inputStream, OutputStream outputStream) throws IOException {
+        return ZipFileUtils.unZipStream(inputStream, outputStream);
+    }
+
+    @Override
+    public String decompressFile(String sourceFileName, String destFileName) throws IOException {
+        return ZipFileUtils.unZipToFile(sourceFileName, destFileName);
+    }
+}
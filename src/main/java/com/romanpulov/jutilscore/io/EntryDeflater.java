@@ -0,0 +1,172 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Deflates files to temp files in parallel and assembles them into a multi entry archive
+ * Entries are written in the order of the file map as soon as they are deflated,
+ * so assembling overlaps with compression of the following entries.
+ * Only a limited number of entries is deflated ahead of the written one, so temp files never hold the whole file set.
+ */
+
+class EntryDeflater {
+    private static final String TEMP_FILE_SUFFIX = ".deflate";
+
+    private static class DeflatedEntry {
+        final String name;
+        final long time;
+        final Path compressedPath;
+        final long crc;
+        final long size;
+
+        DeflatedEntry(String name, long time, Path compressedPath, long crc, long size) {
+            this.name = name;
+            this.time = time;
+            this.compressedPath = compressedPath;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(compressedPath);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private final int mLevel;
+    private final Executor mExecutor;
+    private final Path mTempFolder;
+    private final int mMaxPendingCount;
+
+    /**
+     * @param level deflate level
+     * @param executor executor for entry compression
+     * @param tempFolder folder for deflated entries, usually the folder of the archive, or null for the default temp folder
+     * @param maxPendingCount maximum number of entries deflated or waiting to be written
+     */
+    EntryDeflater(int level, Executor executor, Path tempFolder, int maxPendingCount) {
+        mLevel = level;
+        mExecutor = executor;
+        mTempFolder = tempFolder;
+        mMaxPendingCount = Math.max(1, maxPendingCount);
+    }
+
+    /**
+     * Deflates files and writes them as archive entries
+     * @param files entry names and files
+     * @param writer archive writer
+     * @throws IOException in case of errors with files or compression
+     */
+    void deflate(Map<String, Path> files, ZipArchiveWriter writer) throws IOException {
+        Deque<CompletableFuture<DeflatedEntry>> pending = new ArrayDeque<>(mMaxPendingCount);
+        Iterator<Map.Entry<String, Path>> fileIterator = files.entrySet().iterator();
+        //rate of the call applies to the workers
+        TokenBucket callBucket = IoThrottle.getCallBucket();
+
+        try {
+            while (fileIterator.hasNext() || !pending.isEmpty()) {
+                //next entries are submitted as the written ones free their temp files
+                while (fileIterator.hasNext() && (pending.size() < mMaxPendingCount)) {
+                    Map.Entry<String, Path> file = fileIterator.next();
+                    pending.add(CompletableFuture.supplyAsync(() -> deflateEntry(file.getKey(), file.getValue(), callBucket), mExecutor));
+                }
+
+                DeflatedEntry entry = getEntry(pending.peek());
+                pending.poll();
+                try {
+                    writeEntry(entry, writer);
+                } finally {
+                    entry.delete();
+                }
+            }
+        } finally {
+            //temp files of entries not written because of errors
+            for (CompletableFuture<DeflatedEntry> future : pending) {
+                future.thenAccept(DeflatedEntry::delete);
+            }
+        }
+    }
+
+    private static DeflatedEntry getEntry(CompletableFuture<DeflatedEntry> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException("Error deflating entry", e.getCause());
+        }
+    }
+
+    private DeflatedEntry deflateEntry(String name, Path path, TokenBucket callBucket) {
+        try {
+            Path compressedPath = mTempFolder == null ?
+                    Files.createTempFile(null, TEMP_FILE_SUFFIX) :
+                    Files.createTempFile(mTempFolder, null, TEMP_FILE_SUFFIX);
+            CRC32 crc = new CRC32();
+            long size = 0;
+
+            Deflater deflater = new Deflater(mLevel, true);
+            try (InputStream inputStream = Files.newInputStream(path);
+                 OutputStream outputStream = new DeflaterOutputStream(Files.newOutputStream(compressedPath), deflater, 64 * 1024)) {
+                long length = Files.size(path);
+                byte[] buf = BufferPool.acquire(length);
+                try {
+                    int len;
+                    while ((len = inputStream.read(buf)) > 0) {
+                        crc.update(buf, 0, len);
+                        outputStream.write(buf, 0, len);
+                        size += len;
+                        IoThrottle.acquire(callBucket, len);
+                    }
+                } finally {
+                    BufferPool.release(buf);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(compressedPath);
+                throw e;
+            } finally {
+                deflater.end();
+            }
+
+            return new DeflatedEntry(name, Files.getLastModifiedTime(path).toMillis(), compressedPath, crc.getValue(), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeEntry(DeflatedEntry entry, ZipArchiveWriter writer) throws IOException {
+        writer.putNextEntry(entry.name, entry.time);
+
+        try (InputStream inputStream = Files.newInputStream(entry.compressedPath)) {
+            byte[] buf = BufferPool.acquire(Files.size(entry.compressedPath));
+            try {
+                int len;
+                while ((len = inputStream.read(buf)) > 0) {
+                    writer.writeCompressed(buf, 0, len);
+                }
+            } finally {
+                BufferPool.release(buf);
+            }
+        }
+
+        writer.closeEntry(entry.crc, entry.size);
+    }
+}
@@ -0,0 +1,87 @@
+package com.romanpulov.jutilscore.io;
+
+import com.romanpulov.jutilscore.process.ProcessExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Copy-on-write file clones with cp --reflink=always
+ * A file store where cp reports that clones are not supported is not tried again.
+ */
+
+class FileCloner {
+    private static final boolean CLONE_SUPPORTED = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    //cp messages of a file system or a cp without clone support, other failures do not disable clones
+    private static final String[] UNSUPPORTED_MESSAGES = {
+            "not supported", "Invalid argument", "Invalid cross-device link", "unrecognized option", "illegal option", "invalid option"
+    };
+
+    private static final Map<FileStore, Boolean> mFileStoreCloneSupport = new ConcurrentHashMap<>();
+
+    private static FileStore getFileStore(String fileName) throws IOException {
+        Path folder = new File(fileName).getAbsoluteFile().toPath().getParent();
+        return Files.getFileStore(folder);
+    }
+
+    private static boolean isUnsupportedMessage(String output) {
+        for (String message : UNSUPPORTED_MESSAGES)
+            if (output.contains(message))
+                return true;
+        return false;
+    }
+
+    /**
+     * Clones the file
+     * @param sourceFileName source file
+     * @param destFileName destination file in the same file store
+     * @return true if cloned, false if clone is not supported
+     */
+    static boolean cloneFile(String sourceFileName, String destFileName) {
+        if (!CLONE_SUPPORTED || !new File(sourceFileName).isFile())
+            return false;
+
+        FileStore fileStore;
+        try {
+            fileStore = getFileStore(destFileName);
+            //clones are possible within a file store only
+            if (!fileStore.equals(getFileStore(sourceFileName)))
+                return false;
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (Boolean.FALSE.equals(mFileStoreCloneSupport.get(fileStore)))
+            return false;
+
+        boolean cloned;
+        boolean unsupported;
+        try {
+            ProcessExecutor.ExecutionResult result = ProcessExecutor.executeCommand("cp", "--reflink=always", "--", sourceFileName, destFileName);
+            cloned = result.exitCode() == 0;
+            unsupported = !cloned && isUnsupportedMessage(result.output());
+        } catch (ExecutionException e) {
+            return false;
+        } catch (IOException e) {
+            //cp could not be started
+            cloned = false;
+            unsupported = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        //a store which cloned once supports clones, later failures have other causes
+        if (cloned || unsupported)
+            mFileStoreCloneSupport.merge(fileStore, cloned, Boolean::logicalOr);
+        return cloned;
+    }
+}
@@ -1,9 +1,20 @@
 package com.romanpulov.jutilscore.io;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * File utilities
@@ -12,12 +23,14 @@ import java.util.Locale;
 
 public class FileUtils {
     public static final String BAK_EXT = "bak";
-    private static final int FILE_BUF_LEN = 1024;
     private static final String FILE_EXTENSION = ".";
     private static final String FILE_TEMP_EXTENSION = ".temp";
     private static final String FILE_COPY_FORMAT = "%s." + BAK_EXT + "%02d";
 
     private static int mFileKeepCopiesCount = 5;
+    private static volatile boolean mSyncOnCommit = false;
+    private static volatile Executor mRotationExecutor;
+    private static volatile boolean mCloneCopies = false;
 
     public interface FileProcessor {
         boolean process(String fromFileName, String toFileName);
@@ -33,6 +46,50 @@ public class FileUtils {
         mFileKeepCopiesCount = value;
     }
 
+    /**
+     * Returns retained file copies count
+     * @return copies count
+     */
+    public static int getFileKeepCopiesCount() {
+        return mFileKeepCopiesCount;
+    }
+
+    /**
+     * Sets if committed files and their folders are forced to the storage device, default is false
+     * @param value true to survive power loss at the cost of slower commits
+     */
+    public static void setSyncOnCommit(boolean value) {
+        mSyncOnCommit = value;
+    }
+
+    public static boolean isSyncOnCommit() {
+        return mSyncOnCommit;
+    }
+
+    /**
+     * Sets executor for parallel rotation of copies in saveListCopies, default is null for sequential rotation
+     * @param executor executor or null
+     */
+    public static void setRotationExecutor(Executor executor) {
+        mRotationExecutor = executor;
+    }
+
+    public static Executor getRotationExecutor() {
+        return mRotationExecutor;
+    }
+
+    /**
+     * Sets if file copies are made as copy-on-write clones where the file system supports them, default is false
+     * @param value true to try clones first
+     */
+    public static void setCloneCopies(boolean value) {
+        mCloneCopies = value;
+    }
+
+    public static boolean isCloneCopies() {
+        return mCloneCopies;
+    }
+
     /**
      * Returns temp file name
      * @param fileName input file
@@ -95,40 +152,114 @@ public class FileUtils {
     }
 
     /**
-     * Stream copy procedure
+     * Returns remaining length of the stream if it is known
+     * @param inputStream input stream
+     * @return remaining length or -1 if unknown
+     */
+    public static long getStreamLength(InputStream inputStream) {
+        try {
+            if (inputStream instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) inputStream).getChannel();
+                return Math.max(channel.size() - channel.position(), 0);
+            } else if (inputStream instanceof ByteArrayInputStream) {
+                return inputStream.available();
+            } else if (inputStream instanceof LengthHintInputStream) {
+                return ((LengthHintInputStream) inputStream).getLength();
+            }
+        } catch (IOException e) {
+            //length is just a hint, ignore
+        }
+        return -1;
+    }
+
+    /**
+     * Stream copy procedure, file streams are copied through their channels
      * @param inputStream input stream
      * @param outputStream output stream
      * @throws IOException in case of errors with streams
      */
     public static void copyStream(InputStream inputStream, OutputStream outputStream) throws IOException {
-        byte[] buf = new byte[FILE_BUF_LEN];
-        int len;
-        while ((len = inputStream.read(buf)) > 0) {
-            outputStream.write(buf, 0, len);
-        }
+        copyStream(inputStream, outputStream, getStreamLength(inputStream));
     }
 
     /**
-     * Stream copy procedure
+     * Stream copy procedure with buffer from BufferPool, file streams are copied through their channels
      * @param inputStream input stream
      * @param outputStream output stream
+     * @param length input length for buffer sizing or -1 if unknown
      * @throws IOException in case of errors with streams
      */
-    public static void copyStreamWithZip(String entryName, InputStream inputStream, OutputStream outputStream) throws IOException {
-        byte[] buf = new byte[FILE_BUF_LEN];
-        int len;
+    public static void copyStream(InputStream inputStream, OutputStream outputStream, long length) throws IOException {
+        if ((inputStream instanceof FileInputStream) && (outputStream instanceof FileOutputStream)) {
+            copyChannel(((FileInputStream) inputStream).getChannel(), ((FileOutputStream) outputStream).getChannel());
+            return;
+        }
 
-        byte[] bytes;
-        try(ByteArrayOutputStream arrayOutputStream = new ByteArrayOutputStream()) {
+        byte[] buf = BufferPool.acquire(length);
+        try {
+            int len;
             while ((len = inputStream.read(buf)) > 0) {
-                arrayOutputStream.write(buf, 0, len);
+                outputStream.write(buf, 0, len);
+                IoThrottle.acquire(len);
             }
-            bytes = arrayOutputStream.toByteArray();
+        } finally {
+            BufferPool.release(buf);
         }
+    }
 
-        try(ByteArrayInputStream arrayInputStream = new ByteArrayInputStream(bytes)) {
-            ZipFileUtils.zipStream(entryName, arrayInputStream, outputStream);
+    /**
+     * Channel copy procedure, copies source channel content from its current position
+     * using zero-copy transfer where supported by the platform
+     * @param sourceChannel source channel
+     * @param destChannel destination channel
+     * @return number of bytes copied
+     * @throws IOException in case of errors with channels
+     */
+    public static long copyChannel(FileChannel sourceChannel, FileChannel destChannel) throws IOException {
+        long startPosition = sourceChannel.position();
+        long position = startPosition;
+        long size = sourceChannel.size();
+
+        //transferTo may copy less than requested, loop until done
+        while (position < size) {
+            long transferred = sourceChannel.transferTo(position, IoThrottle.getTransferSize(size - position), destChannel);
+            if (transferred > 0) {
+                position += transferred;
+                IoThrottle.acquire(transferred);
+            } else {
+                //source could be truncated while copying
+                size = sourceChannel.size();
+                if (position < size)
+                    throw new IOException("Unable to transfer data at position " + position);
+            }
         }
+
+        sourceChannel.position(position);
+        return position - startPosition;
+    }
+
+    /**
+     * Stream copy procedure with zip compression, streams data in a single pass with bounded memory
+     * @param entryName zip entry name
+     * @param inputStream input stream
+     * @param outputStream output stream
+     * @throws IOException in case of errors with streams
+     */
+    public static void copyStreamWithZip(String entryName, InputStream inputStream, OutputStream outputStream) throws IOException {
+        ZipFileUtils.zipStream(entryName, inputStream, outputStream);
+    }
+
+    /**
+     * Stream copy procedure with parallel zip compression
+     * @param entryName zip entry name
+     * @param inputStream input stream
+     * @param outputStream output stream
+     * @param threadCount compression thread count, 1 or less for single threaded compression
+     * @param blockSize block size for parallel compression
+     * @throws IOException in case of errors with streams
+     */
+    public static void copyStreamWithZip(String entryName, InputStream inputStream, OutputStream outputStream, int threadCount, int blockSize) throws IOException {
+        ZipFileUtils.zipStream(entryName, inputStream, outputStream, threadCount, blockSize);
     }
 
 
@@ -139,18 +270,43 @@ public class FileUtils {
      * @return true if successful
      */
     public static boolean copy(String sourceFileName, String destFileName) {
+        return copyFile(sourceFileName, destFileName) != null;
+    }
+
+    /**
+     * File copy procedure reporting the strategy used
+     * With clone copies enabled the file is cloned first, falling back to the data copy
+     * @param sourceFileName source file
+     * @param destFileName destination file
+     * @return copy strategy or null if not successful
+     */
+    public static CopyStrategy copyFile(String sourceFileName, String destFileName) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.COPY, sourceFileName);
+        operation.setInputFile(sourceFileName);
+        operation.setOutputFile(destFileName);
+
+        if (mCloneCopies && FileCloner.cloneFile(sourceFileName, destFileName)) {
+            operation.setCopyStrategy(CopyStrategy.CLONE);
+            operation.finish(true);
+            return CopyStrategy.CLONE;
+        }
+
         try (InputStream inputStream = new FileInputStream(sourceFileName);
              OutputStream outputStream = new FileOutputStream(destFileName)
              ) {
 
             //copy routine
             copyStream(inputStream, outputStream);
-
-            return true;
         } catch (IOException e) {
             e.printStackTrace();
-            return false;
+            operation.setError(e);
+            operation.finish(false);
+            return null;
         }
+
+        operation.setCopyStrategy(CopyStrategy.TRANSFER);
+        operation.finish(true);
+        return CopyStrategy.TRANSFER;
     }
 
     /**
@@ -160,18 +316,98 @@ public class FileUtils {
      * @return true if successful
      */
     public static boolean copyWithZip(String entryName, String sourceFileName, String destFileName) {
+        return copyWithZip(entryName, sourceFileName, destFileName, 1, ZipFileUtils.DEFAULT_PARALLEL_BLOCK_SIZE);
+    }
+
+    /**
+     * File copy procedure with parallel zip compression
+     * @param entryName zip entry name
+     * @param sourceFileName source file
+     * @param destFileName destination file
+     * @param threadCount compression thread count, 1 or less for single threaded compression
+     * @param blockSize block size for parallel compression
+     * @return true if successful
+     */
+    public static boolean copyWithZip(String entryName, String sourceFileName, String destFileName, int threadCount, int blockSize) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.COMPRESS, sourceFileName);
+        operation.setInputFile(sourceFileName);
+        operation.setOutputFile(destFileName);
+
         try (InputStream inputStream = new FileInputStream(sourceFileName);
              OutputStream outputStream = new FileOutputStream(destFileName)
         ) {
 
             //copy routine
-            copyStreamWithZip(entryName, inputStream, outputStream);
+            copyStreamWithZip(entryName, inputStream, outputStream, threadCount, blockSize);
+        } catch (IOException e) {
+            e.printStackTrace();
+            operation.setError(e);
+            operation.finish(false);
+            return false;
+        }
 
-            return true;
+        operation.finish(true);
+        return true;
+    }
+
+    /**
+     * File copy procedure with compression
+     * @param entryName archive entry name
+     * @param sourceFileName source file
+     * @param destFileName destination archive file
+     * @param codec compression codec
+     * @return true if successful
+     */
+    public static boolean copyWithCompression(String entryName, String sourceFileName, String destFileName, CompressionCodec codec) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.COMPRESS, sourceFileName);
+        operation.setInputFile(sourceFileName);
+        operation.setOutputFile(destFileName);
+
+        try (InputStream inputStream = new FileInputStream(sourceFileName);
+             OutputStream outputStream = new FileOutputStream(destFileName)
+        ) {
+
+            //copy routine
+            codec.compress(entryName, inputStream, outputStream);
+        } catch (IOException e) {
+            e.printStackTrace();
+            operation.setError(e);
+            operation.finish(false);
+            return false;
+        }
+
+        operation.finish(true);
+        return true;
+    }
+
+    /**
+     * File copy procedure with decompression, codec is detected from the archive content
+     * @param sourceFileName source archive file
+     * @param destFileName destination file
+     * @return true if successful
+     */
+    public static boolean copyWithDecompression(String sourceFileName, String destFileName) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.DECOMPRESS, sourceFileName);
+        operation.setInputFile(sourceFileName);
+        operation.setOutputFile(destFileName);
+
+        try {
+            CompressionCodec codec = CompressionCodecs.detectCodec(sourceFileName);
+            if (codec == null) {
+                operation.finish(false);
+                return false;
+            }
+
+            codec.decompressFile(sourceFileName, destFileName);
         } catch (IOException e) {
             e.printStackTrace();
+            operation.setError(e);
+            operation.finish(false);
             return false;
         }
+
+        operation.finish(true);
+        return true;
     }
 
     /**
@@ -223,6 +459,69 @@ public class FileUtils {
     }
 
     public static boolean saveListCopies(Collection<String> fileNameList) {
+        return saveListCopies(fileNameList, mRotationExecutor);
+    }
+
+    /**
+     * Save rolling copies of files from the list with copies made in parallel
+     * Every copy is written to a temp file from its source before any copy is replaced,
+     * then temp files are committed from the oldest copy. The result is the same as of the sequential rotation,
+     * in case of errors copies are left unchanged.
+     * @param fileNameList file and its copies
+     * @param executor executor for copies or null for sequential rotation
+     * @return true if successful
+     */
+    public static boolean saveListCopies(Collection<String> fileNameList, Executor executor) {
+        if (executor == null)
+            return saveListCopiesSequential(fileNameList);
+
+        //plan copies in the order of sequential rotation, oldest first
+        List<String[]> plan = new ArrayList<>();
+        if (!processListCopies(fileNameList, (fromFileName, toFileName) -> {
+            if (new File(fromFileName).exists())
+                plan.add(new String[] {fromFileName, toFileName});
+            return true;
+        }))
+            return false;
+
+        //rate of the call applies to the copies
+        TokenBucket callBucket = IoThrottle.getCallBucket();
+        List<CompletableFuture<Boolean>> copies = new ArrayList<>(plan.size());
+        for (String[] item : plan) {
+            copies.add(CompletableFuture.supplyAsync(
+                    () -> IoThrottle.run(callBucket, () -> copy(item[0], getTempFileName(item[1]))), executor));
+        }
+
+        boolean copied = true;
+        for (CompletableFuture<Boolean> future : copies) {
+            try {
+                copied &= future.join();
+            } catch (CompletionException e) {
+                e.printStackTrace();
+                copied = false;
+            }
+        }
+
+        int committedCount = 0;
+        try {
+            if (copied) {
+                for (String[] item : plan) {
+                    commitFile(getTempFileName(item[1]), item[1]);
+                    committedCount++;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (int i = committedCount; i < plan.size(); i++) {
+                delete(getTempFileName(plan.get(i)[1]));
+            }
+        }
+
+        return copied && (committedCount == plan.size());
+    }
+
+    private static boolean saveListCopiesSequential(Collection<String> fileNameList) {
         return processListCopies(fileNameList, new FileProcessor() {
             @Override
             public boolean process(String fromFileName, String toFileName) {
@@ -289,6 +588,69 @@ public class FileUtils {
      */
     public static boolean renameTempFile(String tempFileName) {
         String targetFileName = removeExtension(tempFileName, FILE_TEMP_EXTENSION);
-        return ((!targetFileName.equals(tempFileName)) && copy(tempFileName, targetFileName) && delete(tempFileName));
+        if (targetFileName.equals(tempFileName))
+            return false;
+
+        try {
+            commitFile(tempFileName, targetFileName);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Replaces target file with fully written source file, target is either old or new after a crash.
+     * With sync on commit the source data and the folder entry are forced to the storage device.
+     * @param sourceFileName written file, usually a temp file in the target folder
+     * @param targetFileName target file
+     * @throws IOException in case of errors
+     */
+    public static void commitFile(String sourceFileName, String targetFileName) throws IOException {
+        commitFile(sourceFileName, targetFileName, mSyncOnCommit);
+    }
+
+    /**
+     * Replaces target file with fully written source file
+     * @param sourceFileName written file, usually a temp file in the target folder
+     * @param targetFileName target file
+     * @param sync true to force data and folder entry to the storage device
+     * @throws IOException in case of errors
+     */
+    public static void commitFile(String sourceFileName, String targetFileName, boolean sync) throws IOException {
+        Path sourcePath = Paths.get(sourceFileName);
+        Path targetPath = Paths.get(targetFileName);
+
+        if (sync) {
+            try (FileChannel channel = FileChannel.open(sourcePath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+
+        try {
+            Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            //different file stores, file is copied by the move
+            Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (sync) {
+            syncFolder(targetPath.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Forces folder entries to the storage device, not supported on some platforms
+     * @param folderPath folder
+     */
+    private static void syncFolder(Path folderPath) {
+        if (folderPath != null) {
+            try (FileChannel channel = FileChannel.open(folderPath, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                //folders can not be opened or forced on Windows, rename is durable there
+            }
+        }
     }
 }
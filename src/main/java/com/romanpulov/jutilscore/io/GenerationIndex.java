@@ -0,0 +1,130 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generation based rotation of file copies
+ * Each copy is written under a new generation name and live generations are listed in an index file,
+ * rotation replaces the index and deletes the oldest copy instead of renaming every copy.
+ */
+
+public class GenerationIndex {
+    public static final String GEN_EXT = "gen";
+    public static final String INDEX_EXT = ".generations";
+    private static final String GENERATION_FILE_FORMAT = "%s." + GEN_EXT + "%06d";
+
+    private final String mFileName;
+
+    /**
+     * @param fileName full file name the generations are created for
+     */
+    public GenerationIndex(String fileName) {
+        mFileName = fileName;
+    }
+
+    public String getIndexFileName() {
+        return mFileName + INDEX_EXT;
+    }
+
+    public String getGenerationFileName(long generation) {
+        return String.format(Locale.getDefault(), GENERATION_FILE_FORMAT, mFileName, generation);
+    }
+
+    /**
+     * Returns live generations from the index
+     * @return generations, newest first, empty if there is no index
+     * @throws IOException in case of errors reading the index
+     */
+    public List<Long> getGenerations() throws IOException {
+        List<Long> result = new ArrayList<>();
+        File indexFile = new File(getIndexFileName());
+        if (indexFile.exists()) {
+            for (String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.US_ASCII)) {
+                if (!line.isEmpty()) {
+                    try {
+                        result.add(Long.parseLong(line));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid generation index " + indexFile.getPath(), e);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns file names of live generations
+     * @return full file names, newest first
+     * @throws IOException in case of errors reading the index
+     */
+    public List<String> getGenerationFileNames() throws IOException {
+        List<Long> generations = getGenerations();
+        List<String> result = new ArrayList<>(generations.size());
+        for (long generation : generations) {
+            result.add(getGenerationFileName(generation));
+        }
+        return result;
+    }
+
+    /**
+     * Returns file name of the newest generation
+     * @return full file name or null if there are no generations
+     * @throws IOException in case of errors reading the index
+     */
+    public String getLatestGenerationFileName() throws IOException {
+        List<Long> generations = getGenerations();
+        return generations.isEmpty() ? null : getGenerationFileName(generations.get(0));
+    }
+
+    /**
+     * Returns generation number for the next copy
+     * @return generation number
+     * @throws IOException in case of errors reading the index
+     */
+    public long getNextGeneration() throws IOException {
+        List<Long> generations = getGenerations();
+        return generations.isEmpty() ? 1 : generations.get(0) + 1;
+    }
+
+    /**
+     * Adds written generation to the index and deletes generations over keep count
+     * @param generation generation number, its file should be written already
+     * @param keepCount number of live generations to keep
+     * @throws IOException in case of errors writing the index
+     */
+    public void commitGeneration(long generation, int keepCount) throws IOException {
+        List<Long> generations = getGenerations();
+        generations.add(0, generation);
+
+        int liveCount = Math.min(keepCount, generations.size());
+        writeIndex(generations.subList(0, liveCount));
+
+        //deleted after the index is replaced, so the index never lists missing files
+        for (long oldGeneration : generations.subList(liveCount, generations.size())) {
+            FileUtils.delete(getGenerationFileName(oldGeneration));
+        }
+    }
+
+    private void writeIndex(List<Long> generations) throws IOException {
+        Path indexPath = Paths.get(getIndexFileName());
+        Path tempPath = Paths.get(FileUtils.getTempFileName(getIndexFileName()));
+
+        try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.US_ASCII)) {
+            for (long generation : generations) {
+                writer.write(Long.toString(generation));
+                writer.write('\n');
+            }
+        }
+
+        FileUtils.commitFile(tempPath.toString(), indexPath.toString());
+    }
+}
@@ -0,0 +1,103 @@
+package com.romanpulov.jutilscore.io;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory IoMetrics with latency histograms and totals per operation
+ * Latencies are recorded in microseconds.
+ */
+
+public class HistogramIoMetrics implements IoMetrics {
+    private final Map<IoEvent.Operation, OperationMetrics> mMetrics = new EnumMap<>(IoEvent.Operation.class);
+
+    public static class OperationMetrics {
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+        private final LatencyHistogram mCpuTime = new LatencyHistogram();
+        private final AtomicLong mBytesIn = new AtomicLong();
+        private final AtomicLong mBytesOut = new AtomicLong();
+        private final AtomicLong mFilesRotated = new AtomicLong();
+        private final AtomicLong mErrorCount = new AtomicLong();
+
+        private void record(IoEvent event) {
+            mLatency.record(TimeUnit.NANOSECONDS.toMicros(event.getWallNanos()));
+            if (event.getCpuNanos() >= 0)
+                mCpuTime.record(TimeUnit.NANOSECONDS.toMicros(event.getCpuNanos()));
+            if (event.getBytesIn() > 0)
+                mBytesIn.addAndGet(event.getBytesIn());
+            if (event.getBytesOut() > 0)
+                mBytesOut.addAndGet(event.getBytesOut());
+            mFilesRotated.addAndGet(event.getFilesRotated());
+            if (!event.isSuccessful())
+                mErrorCount.incrementAndGet();
+        }
+
+        /**
+         * Returns wall time histogram
+         * @return histogram in microseconds
+         */
+        public LatencyHistogram getLatency() {
+            return mLatency;
+        }
+
+        /**
+         * Returns CPU time histogram of the calling thread
+         * @return histogram in microseconds
+         */
+        public LatencyHistogram getCpuTime() {
+            return mCpuTime;
+        }
+
+        public long getCount() {
+            return mLatency.getCount();
+        }
+
+        public long getBytesIn() {
+            return mBytesIn.get();
+        }
+
+        public long getBytesOut() {
+            return mBytesOut.get();
+        }
+
+        public long getFilesRotated() {
+            return mFilesRotated.get();
+        }
+
+        public long getErrorCount() {
+            return mErrorCount.get();
+        }
+
+        private void reset() {
+            mLatency.reset();
+            mCpuTime.reset();
+            mBytesIn.set(0);
+            mBytesOut.set(0);
+            mFilesRotated.set(0);
+            mErrorCount.set(0);
+        }
+    }
+
+    public HistogramIoMetrics() {
+        for (IoEvent.Operation operation : IoEvent.Operation.values()) {
+            mMetrics.put(operation, new OperationMetrics());
+        }
+    }
+
+    @Override
+    public void onEvent(IoEvent event) {
+        mMetrics.get(event.getOperation()).record(event);
+    }
+
+    public OperationMetrics getMetrics(IoEvent.Operation operation) {
+        return mMetrics.get(operation);
+    }
+
+    public void reset() {
+        for (OperationMetrics metrics : mMetrics.values()) {
+            metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.romanpulov.jutilscore.io;
+
+/**
+ * Completed I/O operation reported to IoMetrics
+ */
+
+public class IoEvent {
+    public enum Operation {
+        COPY,
+        COMPRESS,
+        DECOMPRESS,
+        ROTATE,
+        BACKUP,
+        RESTORE
+    }
+
+    private final Operation mOperation;
+    private final String mName;
+    private final long mBytesIn;
+    private final long mBytesOut;
+    private final long mWallNanos;
+    private final long mCpuNanos;
+    private final int mFilesRotated;
+    private final boolean mSuccessful;
+    private final Throwable mError;
+    private final CopyStrategy mCopyStrategy;
+
+    public IoEvent(Operation operation, String name, long bytesIn, long bytesOut, long wallNanos, long cpuNanos,
+                   int filesRotated, boolean successful, Throwable error) {
+        this(operation, name, bytesIn, bytesOut, wallNanos, cpuNanos, filesRotated, successful, error, null);
+    }
+
+    public IoEvent(Operation operation, String name, long bytesIn, long bytesOut, long wallNanos, long cpuNanos,
+                   int filesRotated, boolean successful, Throwable error, CopyStrategy copyStrategy) {
+        mOperation = operation;
+        mName = name;
+        mBytesIn = bytesIn;
+        mBytesOut = bytesOut;
+        mWallNanos = wallNanos;
+        mCpuNanos = cpuNanos;
+        mFilesRotated = filesRotated;
+        mSuccessful = successful;
+        mError = error;
+        mCopyStrategy = copyStrategy;
+    }
+
+    public Operation getOperation() {
+        return mOperation;
+    }
+
+    /**
+     * Returns source file or data name of the operation
+     * @return name
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns bytes read by the operation
+     * @return bytes or -1 if unknown
+     */
+    public long getBytesIn() {
+        return mBytesIn;
+    }
+
+    /**
+     * Returns bytes written by the operation
+     * @return bytes or -1 if unknown
+     */
+    public long getBytesOut() {
+        return mBytesOut;
+    }
+
+    public long getWallNanos() {
+        return mWallNanos;
+    }
+
+    /**
+     * Returns CPU time of the calling thread, time of worker threads is not included
+     * @return nanoseconds or -1 if not supported
+     */
+    public long getCpuNanos() {
+        return mCpuNanos;
+    }
+
+    public int getFilesRotated() {
+        return mFilesRotated;
+    }
+
+    public boolean isSuccessful() {
+        return mSuccessful;
+    }
+
+    /**
+     * Returns error cause of unsuccessful operation
+     * @return error or null if unknown
+     */
+    public Throwable getError() {
+        return mError;
+    }
+
+    /**
+     * Returns strategy of copy operation
+     * @return strategy or null for other operations
+     */
+    public CopyStrategy getCopyStrategy() {
+        return mCopyStrategy;
+    }
+
+    /**
+     * Returns uncompressed to compressed size ratio
+     * @return ratio or NaN if sizes are unknown
+     */
+    public double getCompressionRatio() {
+        if ((mBytesIn <= 0) || (mBytesOut <= 0))
+            return Double.NaN;
+        return (mOperation == Operation.DECOMPRESS) || (mOperation == Operation.RESTORE) ?
+                (double) mBytesOut / mBytesIn :
+                (double) mBytesIn / mBytesOut;
+    }
+
+    /**
+     * Returns throughput of bytes read
+     * @return bytes per second or NaN if unknown
+     */
+    public double getThroughput() {
+        if ((mBytesIn < 0) || (mWallNanos <= 0))
+            return Double.NaN;
+        return mBytesIn * 1e9 / mWallNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "IoEvent{" +
+                "operation=" + mOperation +
+                ", name='" + mName + '\'' +
+                ", bytesIn=" + mBytesIn +
+                ", bytesOut=" + mBytesOut +
+                ", wallNanos=" + mWallNanos +
+                ", cpuNanos=" + mCpuNanos +
+                ", filesRotated=" + mFilesRotated +
+                ", successful=" + mSuccessful +
+                ", error=" + mError +
+                ", copyStrategy=" + mCopyStrategy +
+                '}';
+    }
+}
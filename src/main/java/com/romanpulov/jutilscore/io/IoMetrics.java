@@ -0,0 +1,45 @@
+package com.romanpulov.jutilscore.io;
+
+/**
+ * Listener of completed I/O operations
+ * Implementations are registered with register() or discovered with ServiceLoader from META-INF/services.
+ * Events are delivered on the thread of the operation, listeners should not block.
+ */
+
+public interface IoMetrics {
+    /**
+     * Called when an operation completes
+     * @param event operation event
+     */
+    void onEvent(IoEvent event);
+
+    static void register(IoMetrics metrics) {
+        IoMetricsRegistry.LISTENERS.addIfAbsent(metrics);
+    }
+
+    static void unregister(IoMetrics metrics) {
+        IoMetricsRegistry.LISTENERS.remove(metrics);
+    }
+
+    /**
+     * Checks if any listener is registered, operations are not measured otherwise
+     * @return true if enabled
+     */
+    static boolean isEnabled() {
+        return !IoMetricsRegistry.LISTENERS.isEmpty();
+    }
+
+    /**
+     * Delivers the event to registered listeners, listener errors do not affect the operation
+     * @param event operation event
+     */
+    static void publish(IoEvent event) {
+        for (IoMetrics metrics : IoMetricsRegistry.LISTENERS) {
+            try {
+                metrics.onEvent(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
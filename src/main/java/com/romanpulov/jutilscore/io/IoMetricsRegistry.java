@@ -0,0 +1,20 @@
+package com.romanpulov.jutilscore.io;
+
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registered IoMetrics listeners, initialized with ServiceLoader providers
+ */
+
+class IoMetricsRegistry {
+    static final CopyOnWriteArrayList<IoMetrics> LISTENERS = loadListeners();
+
+    private static CopyOnWriteArrayList<IoMetrics> loadListeners() {
+        CopyOnWriteArrayList<IoMetrics> result = new CopyOnWriteArrayList<>();
+        for (IoMetrics metrics : ServiceLoader.load(IoMetrics.class)) {
+            result.add(metrics);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measurement of a single I/O operation for IoMetrics
+ * Nothing is measured when no listener is registered at the start of the operation.
+ * Sizes of input and output files are read only when the operation completes.
+ */
+
+public class IoOperation {
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final IoEvent.Operation mOperation;
+    private final String mName;
+    private final boolean mEnabled;
+    private final long mStartNanos;
+    private final long mStartCpuNanos;
+    private long mBytesIn = -1;
+    private long mBytesOut = -1;
+    private String mInputFileName;
+    private String mOutputFileName;
+    private int mFilesRotated;
+    private Throwable mError;
+    private CopyStrategy mCopyStrategy;
+    private boolean mFinished;
+
+    private IoOperation(IoEvent.Operation operation, String name) {
+        mOperation = operation;
+        mName = name;
+        mEnabled = IoMetrics.isEnabled();
+        mStartNanos = mEnabled ? System.nanoTime() : 0;
+        mStartCpuNanos = mEnabled ? getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long getCurrentThreadCpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Starts measurement
+     * @param operation operation
+     * @param name source file or data name
+     * @return operation
+     */
+    public static IoOperation start(IoEvent.Operation operation, String name) {
+        return new IoOperation(operation, name);
+    }
+
+    public void setBytesIn(long bytesIn) {
+        mBytesIn = bytesIn;
+    }
+
+    public void setBytesOut(long bytesOut) {
+        mBytesOut = bytesOut;
+    }
+
+    /**
+     * Sets file whose size is reported as bytes read
+     * @param inputFileName input file name
+     */
+    public void setInputFile(String inputFileName) {
+        mInputFileName = inputFileName;
+    }
+
+    /**
+     * Sets file whose size is reported as bytes written
+     * @param outputFileName output file name
+     */
+    public void setOutputFile(String outputFileName) {
+        mOutputFileName = outputFileName;
+    }
+
+    public void setFilesRotated(int filesRotated) {
+        mFilesRotated = filesRotated;
+    }
+
+    public void setCopyStrategy(CopyStrategy copyStrategy) {
+        mCopyStrategy = copyStrategy;
+    }
+
+    /**
+     * Records error cause, the operation completes as unsuccessful
+     * @param error error
+     */
+    public void setError(Throwable error) {
+        mError = error;
+    }
+
+    /**
+     * Completes the operation and publishes the event, only the first call has effect
+     * @param successful operation result
+     */
+    public void finish(boolean successful) {
+        if (!mEnabled || mFinished)
+            return;
+        mFinished = true;
+
+        long wallNanos = System.nanoTime() - mStartNanos;
+        long cpuNanos = mStartCpuNanos < 0 ? -1 : getCurrentThreadCpuTime() - mStartCpuNanos;
+        if (mInputFileName != null)
+            mBytesIn = getFileLength(mInputFileName);
+        if (mOutputFileName != null)
+            mBytesOut = getFileLength(mOutputFileName);
+
+        IoMetrics.publish(new IoEvent(mOperation, mName, mBytesIn, mBytesOut, wallNanos, cpuNanos,
+                mFilesRotated, successful && (mError == null), mError, mCopyStrategy));
+    }
+
+    private static long getFileLength(String fileName) {
+        File file = new File(fileName);
+        return file.exists() ? file.length() : -1;
+    }
+}
@@ -0,0 +1,127 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * I/O rate limit for copy, compression and restore routines
+ * The global rate applies to all operations, the call rate applies to operations run with it on the current thread.
+ * When both are set, bytes are taken from both buckets.
+ */
+
+public class IoThrottle {
+    /**
+     * Transfer size for channel copies when throttled, zero-copy transfers are split to let the bucket pace them
+     */
+    static final long THROTTLED_TRANSFER_SIZE = 256 * 1024;
+
+    private static volatile TokenBucket mGlobalBucket;
+    private static final ThreadLocal<TokenBucket> mCallBucket = new ThreadLocal<>();
+
+    /**
+     * Sets global rate
+     * @param bytesPerSecond rate, 0 for unlimited
+     */
+    public static void setGlobalRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0)
+            throw new RuntimeException("Invalid value for bytesPerSecond:" + bytesPerSecond);
+        mGlobalBucket = bytesPerSecond == 0 ? null : new TokenBucket(bytesPerSecond);
+    }
+
+    /**
+     * Returns global rate
+     * @return rate or 0 if unlimited
+     */
+    public static long getGlobalRate() {
+        TokenBucket globalBucket = mGlobalBucket;
+        return globalBucket == null ? 0 : globalBucket.getRate();
+    }
+
+    /**
+     * Runs the operation on the current thread with the call rate
+     * @param bytesPerSecond rate
+     * @param supplier operation
+     * @return operation result
+     */
+    public static <T> T run(long bytesPerSecond, Supplier<T> supplier) {
+        return run(new TokenBucket(bytesPerSecond), supplier);
+    }
+
+    /**
+     * Runs the operation on the current thread with the bucket, a shared bucket limits the total rate of operations
+     * @param bucket bucket, null for no call rate
+     * @param supplier operation
+     * @return operation result
+     */
+    public static <T> T run(TokenBucket bucket, Supplier<T> supplier) {
+        TokenBucket previous = mCallBucket.get();
+        mCallBucket.set(bucket);
+        try {
+            return supplier.get();
+        } finally {
+            if (previous == null)
+                mCallBucket.remove();
+            else
+                mCallBucket.set(previous);
+        }
+    }
+
+    /**
+     * Returns call bucket of the current thread to pass to worker threads
+     * @return bucket or null
+     */
+    public static TokenBucket getCallBucket() {
+        return mCallBucket.get();
+    }
+
+    /**
+     * Checks if the current thread operation is throttled
+     * @return true if any rate applies
+     */
+    public static boolean isThrottled() {
+        return (mGlobalBucket != null) || (mCallBucket.get() != null);
+    }
+
+    /**
+     * Takes bytes from the call and global buckets and waits while any of them is in debt
+     * @param count byte count
+     * @throws InterruptedIOException if the thread is interrupted
+     */
+    public static void acquire(long count) throws InterruptedIOException {
+        acquire(mCallBucket.get(), count);
+    }
+
+    /**
+     * Takes bytes from the given call bucket and global bucket, used by worker threads of an operation
+     * @param callBucket call bucket, can be null
+     * @param count byte count
+     * @throws InterruptedIOException if the thread is interrupted
+     */
+    public static void acquire(TokenBucket callBucket, long count) throws InterruptedIOException {
+        TokenBucket globalBucket = mGlobalBucket;
+        long waitNanos = 0;
+        if (callBucket != null)
+            waitNanos = callBucket.reserve(count);
+        if (globalBucket != null)
+            waitNanos = Math.max(waitNanos, globalBucket.reserve(count));
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling");
+            }
+        }
+    }
+
+    /**
+     * Returns size of the next channel transfer
+     * @param remaining remaining bytes
+     * @return transfer size
+     */
+    static long getTransferSize(long remaining) {
+        return isThrottled() ? Math.min(remaining, THROTTLED_TRANSFER_SIZE) : remaining;
+    }
+}
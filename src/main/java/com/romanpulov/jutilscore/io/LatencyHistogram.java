@@ -0,0 +1,117 @@
+package com.romanpulov.jutilscore.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative values with fixed relative precision, like HdrHistogram
+ * Every power of two range is split into 64 buckets, so recorded values keep two significant decimal digits.
+ * Recording is lock free and allocation free.
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong mMax = new AtomicLong(-1);
+
+    static int getIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    static long getHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Records value
+     * @param value value, negative values are ignored
+     */
+    public void record(long value) {
+        if (value < 0)
+            return;
+
+        mCounts.incrementAndGet(getIndex(value));
+        mTotalCount.incrementAndGet();
+        mTotal.addAndGet(value);
+        mMin.accumulateAndGet(value, Math::min);
+        mMax.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * Returns minimum value
+     * @return value or -1 if empty
+     */
+    public long getMin() {
+        return getCount() == 0 ? -1 : mMin.get();
+    }
+
+    /**
+     * Returns maximum value
+     * @return value or -1 if empty
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns mean value
+     * @return value or NaN if empty
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? Double.NaN : (double) mTotal.get() / count;
+    }
+
+    /**
+     * Returns value at percentile, the highest value equivalent to the bucket
+     * @param percentile percentile from 0 to 100
+     * @return value or -1 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if ((percentile < 0) || (percentile > 100))
+            throw new RuntimeException("Invalid value for percentile:" + percentile);
+
+        long count = getCount();
+        if (count == 0)
+            return -1;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += mCounts.get(i);
+            if (accumulated >= target)
+                return Math.min(getHighestValue(i), getMax());
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotal.set(0);
+        mMin.set(Long.MAX_VALUE);
+        mMax.set(-1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream wrapper keeping the length of the wrapped stream for FileUtils.getStreamLength
+ */
+
+public class LengthHintInputStream extends FilterInputStream {
+    private final long mLength;
+    private long mPosition;
+
+    /**
+     * @param in input stream
+     * @param length length of the stream or -1 if unknown, usually FileUtils.getStreamLength of the stream
+     */
+    public LengthHintInputStream(InputStream in, long length) {
+        super(in);
+        mLength = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0)
+            mPosition++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count > 0)
+            mPosition += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long count = super.skip(n);
+        mPosition += count;
+        return count;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Returns remaining length
+     * @return bytes left to read or -1 if unknown
+     */
+    public long getLength() {
+        return mLength < 0 ? -1 : Math.max(mLength - mPosition, 0);
+    }
+}
@@ -0,0 +1,388 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Fast codec writing LZ4 frame format with independent blocks and content checksum
+ * Frames are readable by the lz4 command line tool, decompression also supports linked blocks
+ */
+
+public class Lz4Codec implements CompressionCodec {
+    public static final String LZ4_EXT = ".lz4";
+
+    private static final int MAGIC = 0x184D2204;
+    private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+
+    private static final int FLG_VERSION = 0x40;
+    private static final int FLG_VERSION_MASK = 0xC0;
+    private static final int FLG_BLOCK_INDEPENDENCE = 0x20;
+    private static final int FLG_BLOCK_CHECKSUM = 0x10;
+    private static final int FLG_CONTENT_SIZE = 0x08;
+    private static final int FLG_CONTENT_CHECKSUM = 0x04;
+    private static final int FLG_DICTIONARY_ID = 0x01;
+
+    private static final int BLOCK_SIZE_ID = 5;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int BLOCK_UNCOMPRESSED = 0x80000000;
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int HASH_LOG = 16;
+    private static final int SKIP_TRIGGER = 6;
+
+    @Override
+    public String getFileExtension() {
+        return LZ4_EXT;
+    }
+
+    @Override
+    public boolean acceptsHeader(byte[] header, int length) {
+        return (length >= 4) && (XxHash32.getInt(header, 0) == MAGIC);
+    }
+
+    @Override
+    public void compress(String entryName, InputStream inputStream, OutputStream outputStream) throws IOException {
+        try (OutputStream out = new PooledBufferedOutputStream(outputStream, FileUtils.getStreamLength(inputStream))) {
+            byte[] block = new byte[BLOCK_SIZE];
+            byte[] compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+            int[] hashTable = new int[1 << HASH_LOG];
+            XxHash32 contentChecksum = new XxHash32();
+            byte[] intBuffer = new byte[4];
+
+            //frame header
+            int flg = FLG_VERSION | FLG_BLOCK_INDEPENDENCE | FLG_CONTENT_CHECKSUM;
+            int bd = BLOCK_SIZE_ID << 4;
+            byte[] descriptor = {(byte) flg, (byte) bd};
+            writeInt(out, MAGIC, intBuffer);
+            out.write(descriptor);
+            out.write((XxHash32.hash(descriptor, 0, descriptor.length) >> 8) & 0xFF);
+
+            //blocks
+            int length;
+            while ((length = readBlock(inputStream, block)) > 0) {
+                contentChecksum.update(block, 0, length);
+
+                int compressedLength = compressBlock(block, length, compressed, hashTable);
+                if (compressedLength < length) {
+                    writeInt(out, compressedLength, intBuffer);
+                    out.write(compressed, 0, compressedLength);
+                } else {
+                    writeInt(out, length | BLOCK_UNCOMPRESSED, intBuffer);
+                    out.write(block, 0, length);
+                }
+            }
+
+            //end mark and checksum
+            writeInt(out, 0, intBuffer);
+            writeInt(out, (int) contentChecksum.getValue(), intBuffer);
+        }
+    }
+
+    @Override
+    public String decompress(InputStream inputStream, OutputStream outputStream) throws IOException {
+        try (InputStream in = new PooledBufferedInputStream(inputStream, FileUtils.getStreamLength(inputStream))) {
+            byte[] intBuffer = new byte[4];
+            boolean firstFrame = true;
+
+            while (true) {
+                //magic, end of stream is allowed between frames only
+                int read = readFully(in, intBuffer, 0, 4);
+                if ((read == 0) && !firstFrame)
+                    break;
+                if (read < 4)
+                    throw new EOFException("Unexpected end of LZ4 stream");
+
+                int magic = XxHash32.getInt(intBuffer, 0);
+                if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+                    skipFully(in, readInt(in, intBuffer) & 0xFFFFFFFFL);
+                } else if (magic == MAGIC) {
+                    decompressFrame(in, outputStream, intBuffer);
+                } else {
+                    throw new IOException("Invalid LZ4 frame magic");
+                }
+                firstFrame = false;
+            }
+        }
+
+        return null;
+    }
+
+    private static void decompressFrame(InputStream in, OutputStream outputStream, byte[] intBuffer) throws IOException {
+        byte[] descriptor = new byte[14];
+        readFullyOrThrow(in, descriptor, 0, 2);
+        int flg = descriptor[0] & 0xFF;
+        int bd = descriptor[1] & 0xFF;
+        if ((flg & FLG_VERSION_MASK) != FLG_VERSION)
+            throw new IOException("Unsupported LZ4 frame version");
+        if ((flg & FLG_DICTIONARY_ID) != 0)
+            throw new IOException("LZ4 frames with dictionary are not supported");
+
+        int descriptorLength = 2;
+        if ((flg & FLG_CONTENT_SIZE) != 0) {
+            readFullyOrThrow(in, descriptor, descriptorLength, 8);
+            descriptorLength += 8;
+        }
+        int headerChecksum = in.read();
+        if (headerChecksum != ((XxHash32.hash(descriptor, 0, descriptorLength) >> 8) & 0xFF))
+            throw new IOException("Invalid LZ4 frame header checksum");
+
+        int blockSizeId = (bd >> 4) & 0x07;
+        if (blockSizeId < 4)
+            throw new IOException("Invalid LZ4 block size");
+        int maxBlockSize = 1 << (2 * blockSizeId + 8);
+
+        boolean blockChecksum = (flg & FLG_BLOCK_CHECKSUM) != 0;
+        XxHash32 contentChecksum = (flg & FLG_CONTENT_CHECKSUM) != 0 ? new XxHash32() : null;
+
+        byte[] block = new byte[maxBlockSize];
+        byte[] window = new byte[WINDOW_SIZE + maxBlockSize];
+        int windowLength = 0;
+
+        int blockHeader;
+        while ((blockHeader = readInt(in, intBuffer)) != 0) {
+            int length = blockHeader & ~BLOCK_UNCOMPRESSED;
+            if (length > maxBlockSize)
+                throw new IOException("Invalid LZ4 block length");
+            readFullyOrThrow(in, block, 0, length);
+            if (blockChecksum && (readInt(in, intBuffer) != XxHash32.hash(block, 0, length)))
+                throw new IOException("Invalid LZ4 block checksum");
+
+            //keep last 64 KB of output for linked blocks
+            if (windowLength > WINDOW_SIZE) {
+                System.arraycopy(window, windowLength - WINDOW_SIZE, window, 0, WINDOW_SIZE);
+                windowLength = WINDOW_SIZE;
+            }
+
+            int outputLength;
+            if ((blockHeader & BLOCK_UNCOMPRESSED) != 0) {
+                System.arraycopy(block, 0, window, windowLength, length);
+                outputLength = length;
+            } else {
+                outputLength = decompressBlock(block, length, window, windowLength);
+            }
+
+            outputStream.write(window, windowLength, outputLength);
+            if (contentChecksum != null)
+                contentChecksum.update(window, windowLength, outputLength);
+            windowLength += outputLength;
+        }
+
+        if ((contentChecksum != null) && (readInt(in, intBuffer) != (int) contentChecksum.getValue()))
+            throw new IOException("Invalid LZ4 content checksum");
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses block in LZ4 block format
+     * @param src source
+     * @param srcLength source length
+     * @param dst destination of at least maxCompressedLength
+     * @param hashTable hash table
+     * @return compressed length
+     */
+    static int compressBlock(byte[] src, int srcLength, byte[] dst, int[] hashTable) {
+        int anchor = 0;
+        int op = 0;
+
+        if (srcLength > MF_LIMIT) {
+            Arrays.fill(hashTable, -1);
+            int matchLimit = srcLength - MF_LIMIT;
+            int matchEndLimit = srcLength - LAST_LITERALS;
+            int ip = 0;
+            int searchCount = 1 << SKIP_TRIGGER;
+
+            while (ip < matchLimit) {
+                int sequence = XxHash32.getInt(src, ip);
+                int h = hash(sequence);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+
+                if ((ref < 0) || (ip - ref > MAX_DISTANCE) || (XxHash32.getInt(src, ref) != sequence)) {
+                    //skip faster through incompressible data
+                    ip += searchCount++ >> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+
+                //extend forward and backward
+                int matchEnd = ip + MIN_MATCH;
+                int refEnd = ref + MIN_MATCH;
+                while ((matchEnd < matchEndLimit) && (src[matchEnd] == src[refEnd])) {
+                    matchEnd++;
+                    refEnd++;
+                }
+                while ((ip > anchor) && (ref > 0) && (src[ip - 1] == src[ref - 1])) {
+                    ip--;
+                    ref--;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchEnd - ip - MIN_MATCH, dst, op);
+                ip = matchEnd;
+                anchor = ip;
+
+                if (ip - 2 < matchLimit) {
+                    hashTable[hash(XxHash32.getInt(src, ip - 2))] = ip - 2;
+                }
+            }
+        }
+
+        //last literals
+        int literalLength = srcLength - anchor;
+        int token = op++;
+        dst[token] = (byte) (Math.min(literalLength, 15) << 4);
+        op = writeLength(literalLength, dst, op);
+        System.arraycopy(src, anchor, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    /**
+     * Decompresses LZ4 block, matches may refer to the data in destination before the offset
+     * @param src source
+     * @param srcLength source length
+     * @param dst destination
+     * @param dstOffset destination offset
+     * @return decompressed length
+     * @throws IOException in case of corrupted block
+     */
+    static int decompressBlock(byte[] src, int srcLength, byte[] dst, int dstOffset) throws IOException {
+        try {
+            int ip = 0;
+            int op = dstOffset;
+
+            while (true) {
+                int token = src[ip++] & 0xFF;
+
+                //literals
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if ((ip + literalLength > srcLength) || (op + literalLength > dst.length))
+                    throw new IOException("Corrupted LZ4 block");
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+
+                if (ip == srcLength)
+                    return op - dstOffset;
+
+                //match
+                int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+
+                int ref = op - offset;
+                if ((offset == 0) || (ref < 0) || (op + matchLength > dst.length))
+                    throw new IOException("Corrupted LZ4 block");
+
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    //overlapping match repeats the pattern
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupted LZ4 block", e);
+        }
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength, byte[] dst, int op) {
+        int token = op++;
+        dst[token] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(matchLength, 15));
+
+        op = writeLength(literalLength, dst, op);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+
+        return writeLength(matchLength, dst, op);
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length >= 15) {
+            length -= 15;
+            while (length >= 255) {
+                dst[op++] = (byte) 255;
+                length -= 255;
+            }
+            dst[op++] = (byte) length;
+        }
+        return op;
+    }
+
+    private static int readBlock(InputStream inputStream, byte[] block) throws IOException {
+        return readFully(inputStream, block, 0, block.length);
+    }
+
+    private static int readFully(InputStream inputStream, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        int read;
+        while ((total < len) && ((read = inputStream.read(b, off + total, len - total)) > 0)) {
+            total += read;
+        }
+        IoThrottle.acquire(total);
+        return total;
+    }
+
+    private static void readFullyOrThrow(InputStream inputStream, byte[] b, int off, int len) throws IOException {
+        if (readFully(inputStream, b, off, len) < len)
+            throw new EOFException("Unexpected end of LZ4 stream");
+    }
+
+    private static int readInt(InputStream inputStream, byte[] intBuffer) throws IOException {
+        readFullyOrThrow(inputStream, intBuffer, 0, 4);
+        return XxHash32.getInt(intBuffer, 0);
+    }
+
+    private static void skipFully(InputStream inputStream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0) {
+                if (inputStream.read() < 0)
+                    throw new EOFException("Unexpected end of LZ4 stream");
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static void writeInt(OutputStream outputStream, int value, byte[] intBuffer) throws IOException {
+        intBuffer[0] = (byte) value;
+        intBuffer[1] = (byte) (value >>> 8);
+        intBuffer[2] = (byte) (value >>> 16);
+        intBuffer[3] = (byte) (value >>> 24);
+        outputStream.write(intBuffer, 0, 4);
+    }
+}
@@ -0,0 +1,158 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates input in independent blocks on a ForkJoinPool, pigz style
+ * Each block is primed with the last 32 KB of the previous block as a dictionary and ends with
+ * a sync flush, so concatenated blocks form a single valid raw deflate stream
+ */
+
+class ParallelDeflater {
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int BLOCKS_PER_THREAD = 2;
+
+    private static class Block {
+        final byte[] data;
+        final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final int mLevel;
+    private final int mThreadCount;
+    private final int mBlockSize;
+
+    private final CRC32 mCrc = new CRC32();
+    private long mSize;
+
+    ParallelDeflater(int level, int threadCount, int blockSize) {
+        if (threadCount < 1)
+            throw new RuntimeException("Invalid value for thread count, should be at least 1");
+        if (blockSize < DICTIONARY_SIZE)
+            throw new RuntimeException("Invalid value for block size, should be at least " + DICTIONARY_SIZE);
+        mLevel = level;
+        mThreadCount = threadCount;
+        mBlockSize = blockSize;
+    }
+
+    /**
+     * @return CRC32 of deflated input
+     */
+    long getCrc() {
+        return mCrc.getValue();
+    }
+
+    /**
+     * @return deflated input size
+     */
+    long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Deflates input stream to the current entry of the archive writer
+     * @param inputStream input stream
+     * @param writer archive writer with an open entry
+     * @throws IOException in case of errors with streams or compression
+     */
+    void deflate(InputStream inputStream, ZipArchiveWriter writer) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(mThreadCount);
+        Deque<Future<Block>> pending = new ArrayDeque<>();
+
+        try {
+            Block previous = null;
+            boolean last = false;
+
+            while (!last) {
+                byte[] data = new byte[mBlockSize];
+                int length = readBlock(inputStream, data);
+                boolean lastBlock = length < mBlockSize;
+
+                Block block = new Block(data, length);
+                Block dictionary = previous;
+                pending.add(pool.submit(() -> deflateBlock(block, dictionary, lastBlock)));
+
+                mCrc.update(data, 0, length);
+                mSize += length;
+                previous = block;
+                last = lastBlock;
+
+                while (pending.size() >= mThreadCount * BLOCKS_PER_THREAD) {
+                    writeBlock(pending.poll(), writer);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeBlock(pending.poll(), writer);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int readBlock(InputStream inputStream, byte[] data) throws IOException {
+        int length = 0;
+        int len;
+        while ((length < data.length) && ((len = inputStream.read(data, length, data.length - length)) > 0)) {
+            length += len;
+        }
+        IoThrottle.acquire(length);
+        return length;
+    }
+
+    private static void writeBlock(Future<Block> future, ZipArchiveWriter writer) throws IOException {
+        try {
+            Block block = future.get();
+            writer.writeCompressed(block.data, 0, block.length);
+        } catch (ExecutionException e) {
+            throw new IOException("Error deflating block", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deflating", e);
+        }
+    }
+
+    private Block deflateBlock(Block block, Block dictionary, boolean last) {
+        Deflater deflater = new Deflater(mLevel, true);
+        try {
+            if ((dictionary != null) && (dictionary.length > 0)) {
+                int dictionaryLength = Math.min(dictionary.length, DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary.data, dictionary.length - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(block.data, 0, block.length);
+            if (last) {
+                deflater.finish();
+            }
+
+            byte[] output = new byte[block.length + (block.length >> 3) + 64];
+            int outputLength = 0;
+            while (true) {
+                if (outputLength == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                outputLength += deflater.deflate(output, outputLength, output.length - outputLength,
+                        last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+
+                //sync flush is complete when it leaves free space in the output
+                if (last ? deflater.finished() : (outputLength < output.length) && deflater.needsInput()) {
+                    return new Block(output, outputLength);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+}
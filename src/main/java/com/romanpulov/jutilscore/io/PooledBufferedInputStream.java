@@ -0,0 +1,32 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered input stream with the buffer taken from BufferPool
+ */
+
+class PooledBufferedInputStream extends BufferedInputStream {
+    private final byte[] mPooledBuffer;
+    private boolean mClosed;
+
+    PooledBufferedInputStream(InputStream in, long length) {
+        super(in, 1);
+        mPooledBuffer = BufferPool.acquire(length);
+        buf = mPooledBuffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mClosed) {
+            mClosed = true;
+            try {
+                super.close();
+            } finally {
+                BufferPool.release(mPooledBuffer);
+            }
+        }
+    }
+}
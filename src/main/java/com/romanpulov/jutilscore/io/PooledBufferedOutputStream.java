@@ -0,0 +1,32 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered output stream with the buffer taken from BufferPool
+ */
+
+class PooledBufferedOutputStream extends BufferedOutputStream {
+    private final byte[] mPooledBuffer;
+    private boolean mClosed;
+
+    PooledBufferedOutputStream(OutputStream out, long length) {
+        super(out, 1);
+        mPooledBuffer = BufferPool.acquire(length);
+        buf = mPooledBuffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mClosed) {
+            mClosed = true;
+            try {
+                super.close();
+            } finally {
+                BufferPool.release(mPooledBuffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Progress and cancellation of a long running file operation
+ * The tracker is bound to the thread running the operation, copy routines report processed bytes to the
+ * current tracker and stop with InterruptedIOException once it is cancelled. Without a tracker reporting is a no-op.
+ */
+
+public class ProgressTracker {
+    public enum Phase {
+        ROTATE,
+        COMPRESS,
+        DECOMPRESS,
+        COMMIT
+    }
+
+    public interface Listener {
+        /**
+         * Called from the operation thread when phase changes or bytes are processed
+         * @param phase current phase
+         * @param bytesRead bytes read so far
+         * @param bytesWritten bytes written so far
+         */
+        void onProgress(Phase phase, long bytesRead, long bytesWritten);
+    }
+
+    private static final ThreadLocal<ProgressTracker> mCurrent = new ThreadLocal<>();
+
+    private final Listener mListener;
+    private final AtomicLong mBytesRead = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    private volatile Phase mPhase;
+    private volatile boolean mCancelled;
+
+    /**
+     * @param listener progress listener, can be null
+     */
+    public ProgressTracker(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Returns tracker of the current thread
+     * @return tracker or null
+     */
+    public static ProgressTracker current() {
+        return mCurrent.get();
+    }
+
+    /**
+     * Runs the operation asynchronously with a new tracker, cancelling the future cancels the operation
+     * @param supplier operation
+     * @param executor executor
+     * @param listener progress listener, can be null
+     * @return operation future
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor, Listener listener) {
+        ProgressTracker tracker = new ProgressTracker(listener);
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> tracker.run(supplier), executor);
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled())
+                tracker.cancel();
+        });
+        return future;
+    }
+
+    /**
+     * Runs the operation on the current thread with this tracker
+     * @param supplier operation
+     * @return operation result
+     */
+    public <T> T run(Supplier<T> supplier) {
+        ProgressTracker previous = mCurrent.get();
+        mCurrent.set(this);
+        try {
+            return supplier.get();
+        } finally {
+            if (previous == null)
+                mCurrent.remove();
+            else
+                mCurrent.set(previous);
+        }
+    }
+
+    public Phase getPhase() {
+        return mPhase;
+    }
+
+    public long getBytesRead() {
+        return mBytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return mBytesWritten.get();
+    }
+
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    private void notifyListener() {
+        if (mListener != null)
+            mListener.onProgress(mPhase, mBytesRead.get(), mBytesWritten.get());
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (mCancelled)
+            throw new InterruptedIOException("Operation cancelled");
+    }
+
+    /**
+     * Sets phase of the current thread operation
+     * @param phase new phase
+     * @throws InterruptedIOException if the operation is cancelled
+     */
+    public static void phase(Phase phase) throws InterruptedIOException {
+        ProgressTracker tracker = mCurrent.get();
+        if (tracker != null) {
+            tracker.checkCancelled();
+            tracker.mPhase = phase;
+            tracker.notifyListener();
+        }
+    }
+
+    /**
+     * Reports bytes processed by the current thread operation
+     * @param bytesRead bytes read
+     * @param bytesWritten bytes written
+     * @throws InterruptedIOException if the operation is cancelled
+     */
+    public static void progress(long bytesRead, long bytesWritten) throws InterruptedIOException {
+        ProgressTracker tracker = mCurrent.get();
+        if (tracker != null) {
+            tracker.checkCancelled();
+            tracker.mBytesRead.addAndGet(bytesRead);
+            tracker.mBytesWritten.addAndGet(bytesWritten);
+            tracker.notifyListener();
+        }
+    }
+
+    /**
+     * Wraps the stream to report read bytes if the current thread has a tracker
+     * @param inputStream input stream
+     * @return wrapped or the same stream
+     */
+    public static InputStream track(InputStream inputStream) {
+        if (mCurrent.get() == null)
+            return inputStream;
+
+        //length is kept for buffer sizing of the consumer
+        return new LengthHintInputStream(inputStream, FileUtils.getStreamLength(inputStream)) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    progress(1, 0);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0)
+                    progress(count, 0);
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Wraps the stream to report written bytes if the current thread has a tracker
+     * @param outputStream output stream
+     * @return wrapped or the same stream
+     */
+    public static OutputStream track(OutputStream outputStream) {
+        if (mCurrent.get() == null)
+            return outputStream;
+
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                progress(0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                progress(0, len);
+            }
+        };
+    }
+}
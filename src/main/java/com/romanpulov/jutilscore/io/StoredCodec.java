@@ -0,0 +1,15 @@
+package com.romanpulov.jutilscore.io;
+
+import java.util.zip.Deflater;
+
+/**
+ * ZIP archive codec without compression, for data which is already compressed
+ * Data is kept in deflate stored blocks, so the archive is still written in a single pass
+ * without knowing the checksum in advance
+ */
+
+public class StoredCodec extends DeflateCodec {
+    public StoredCodec() {
+        super(Deflater.NO_COMPRESSION);
+    }
+}
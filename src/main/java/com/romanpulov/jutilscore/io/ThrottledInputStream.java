@@ -0,0 +1,39 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream limiting the read rate with a token bucket
+ */
+
+public class ThrottledInputStream extends FilterInputStream {
+    private final TokenBucket mBucket;
+
+    public ThrottledInputStream(InputStream in, TokenBucket bucket) {
+        super(in);
+        mBucket = bucket;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0)
+            mBucket.acquire(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count > 0)
+            mBucket.acquire(count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        return in.skip(n);
+    }
+}
@@ -0,0 +1,30 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream limiting the write rate with a token bucket
+ */
+
+public class ThrottledOutputStream extends FilterOutputStream {
+    private final TokenBucket mBucket;
+
+    public ThrottledOutputStream(OutputStream out, TokenBucket bucket) {
+        super(out);
+        mBucket = bucket;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        mBucket.acquire(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        mBucket.acquire(len);
+    }
+}
@@ -0,0 +1,102 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket for limiting I/O rate in bytes per second
+ * Consumers take tokens in any amount and may leave the bucket in debt, the caller sleeps only while the bucket
+ * is in debt, so buffers within the burst capacity pass without waiting.
+ * The bucket is thread safe and can be shared to limit the total rate of several operations.
+ */
+
+public class TokenBucket {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long mRate;
+    private final long mCapacity;
+    private long mTokens;
+    private long mLastNanos;
+
+    /**
+     * Creates bucket with one second burst
+     * @param bytesPerSecond rate
+     */
+    public TokenBucket(long bytesPerSecond) {
+        this(bytesPerSecond, bytesPerSecond);
+    }
+
+    /**
+     * @param bytesPerSecond rate
+     * @param capacity burst capacity in bytes
+     */
+    public TokenBucket(long bytesPerSecond, long capacity) {
+        if (bytesPerSecond <= 0)
+            throw new RuntimeException("Invalid value for bytesPerSecond:" + bytesPerSecond);
+        if (capacity <= 0)
+            throw new RuntimeException("Invalid value for capacity:" + capacity);
+        mRate = bytesPerSecond;
+        mCapacity = capacity;
+        mTokens = capacity;
+        mLastNanos = System.nanoTime();
+    }
+
+    public long getRate() {
+        return mRate;
+    }
+
+    public long getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Takes tokens without waiting
+     * @param count token count
+     * @return nanoseconds to wait until the debt is paid back, 0 if none
+     */
+    public synchronized long reserve(long count) {
+        long now = System.nanoTime();
+        long elapsed = now - mLastNanos;
+        if (elapsed >= multiplyDivide(mCapacity - mTokens, NANOS_PER_SECOND, mRate)) {
+            mTokens = mCapacity;
+            mLastNanos = now;
+        } else {
+            //advance only by the time of whole tokens to keep the remainder for the next refill
+            long refill = multiplyDivide(elapsed, mRate, NANOS_PER_SECOND);
+            mTokens += refill;
+            mLastNanos += multiplyDivide(refill, NANOS_PER_SECOND, mRate);
+        }
+
+        mTokens -= count;
+        return mTokens < 0 ? multiplyDivide(-mTokens, NANOS_PER_SECOND, mRate) : 0;
+    }
+
+    /**
+     * Calculates value * multiplier / divisor for non-negative arguments without overflow
+     * Products over the long range are calculated in double, the result is clamped to Long.MAX_VALUE.
+     */
+    private static long multiplyDivide(long value, long multiplier, long divisor) {
+        long product = value * multiplier;
+        if ((Math.multiplyHigh(value, multiplier) == 0) && (product >= 0))
+            return product / divisor;
+        //cast of double to long saturates
+        return (long) ((double) value * multiplier / divisor);
+    }
+
+    /**
+     * Takes tokens and waits while the bucket is in debt
+     * @param count token count
+     * @throws InterruptedIOException if the thread is interrupted
+     */
+    public void acquire(long count) throws InterruptedIOException {
+        long waitNanos = reserve(count);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling");
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.romanpulov.jutilscore.io;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors running tasks on virtual threads when the runtime supports them
+ */
+
+public class VirtualThreads {
+    /**
+     * Creates executor with a thread per task, a cached pool of daemon threads if virtual threads are not supported
+     * @param fallbackThreadName name of the pool threads
+     * @return executor
+     */
+    public static ExecutorService newExecutor(String fallbackThreadName) {
+        //library targets Java 17, virtual threads are looked up at runtime
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, fallbackThreadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
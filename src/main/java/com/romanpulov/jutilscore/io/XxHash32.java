@@ -0,0 +1,133 @@
+package com.romanpulov.jutilscore.io;
+
+import java.util.zip.Checksum;
+
+/**
+ * Streaming xxHash32 checksum, as used by LZ4 frame format
+ */
+
+class XxHash32 implements Checksum {
+    private static final int PRIME1 = 0x9E3779B1;
+    private static final int PRIME2 = 0x85EBCA77;
+    private static final int PRIME3 = 0xC2B2AE3D;
+    private static final int PRIME4 = 0x27D4EB2F;
+    private static final int PRIME5 = 0x165667B1;
+
+    private final int mSeed;
+    private final byte[] mMemory = new byte[16];
+    private int mMemorySize;
+    private long mTotalLength;
+    private int v1, v2, v3, v4;
+
+    XxHash32() {
+        this(0);
+    }
+
+    XxHash32(int seed) {
+        mSeed = seed;
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        v1 = mSeed + PRIME1 + PRIME2;
+        v2 = mSeed + PRIME2;
+        v3 = mSeed;
+        v4 = mSeed - PRIME1;
+        mMemorySize = 0;
+        mTotalLength = 0;
+    }
+
+    @Override
+    public void update(int b) {
+        update(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        mTotalLength += len;
+
+        if (mMemorySize + len < 16) {
+            System.arraycopy(b, off, mMemory, mMemorySize, len);
+            mMemorySize += len;
+            return;
+        }
+
+        if (mMemorySize > 0) {
+            int fill = 16 - mMemorySize;
+            System.arraycopy(b, off, mMemory, mMemorySize, fill);
+            processStripe(mMemory, 0);
+            off += fill;
+            len -= fill;
+            mMemorySize = 0;
+        }
+
+        while (len >= 16) {
+            processStripe(b, off);
+            off += 16;
+            len -= 16;
+        }
+
+        System.arraycopy(b, off, mMemory, 0, len);
+        mMemorySize = len;
+    }
+
+    @Override
+    public long getValue() {
+        int h;
+        if (mTotalLength >= 16) {
+            h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+        } else {
+            h = mSeed + PRIME5;
+        }
+        h += (int) mTotalLength;
+
+        int i = 0;
+        for (; i + 4 <= mMemorySize; i += 4) {
+            h += getInt(mMemory, i) * PRIME3;
+            h = Integer.rotateLeft(h, 17) * PRIME4;
+        }
+        for (; i < mMemorySize; i++) {
+            h += (mMemory[i] & 0xFF) * PRIME5;
+            h = Integer.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+
+        return h & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Calculates hash of the given bytes
+     * @param b bytes
+     * @param off offset
+     * @param len length
+     * @return hash value
+     */
+    static int hash(byte[] b, int off, int len) {
+        XxHash32 xxHash32 = new XxHash32();
+        xxHash32.update(b, off, len);
+        return (int) xxHash32.getValue();
+    }
+
+    private void processStripe(byte[] b, int off) {
+        v1 = round(v1, getInt(b, off));
+        v2 = round(v2, getInt(b, off + 4));
+        v3 = round(v3, getInt(b, off + 8));
+        v4 = round(v4, getInt(b, off + 12));
+    }
+
+    private static int round(int acc, int input) {
+        acc += input * PRIME2;
+        acc = Integer.rotateLeft(acc, 13);
+        return acc * PRIME1;
+    }
+
+    static int getInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,258 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes ZIP archive from already deflated entry data
+ * Record layout follows java.util.zip.ZipOutputStream, including ZIP64 extensions,
+ * so the archives are readable by ZipFile, ZipInputStream and stock tools
+ */
+
+class ZipArchiveWriter implements Closeable {
+    private static final long LOCSIG = 0x04034b50L;
+    private static final long EXTSIG = 0x08074b50L;
+    private static final long CENSIG = 0x02014b50L;
+    private static final long ENDSIG = 0x06054b50L;
+    private static final long ZIP64_ENDSIG = 0x06064b50L;
+    private static final long ZIP64_LOCSIG = 0x07064b50L;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+    private static final int ZIP64_EXTID = 0x0001;
+    private static final int ZIP64_ENDHDR = 56;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static class Entry {
+        final byte[] name;
+        final long dosTime;
+        final long offset;
+        long crc;
+        long size;
+        long compressedSize;
+
+        Entry(byte[] name, long dosTime, long offset) {
+            this.name = name;
+            this.dosTime = dosTime;
+            this.offset = offset;
+        }
+    }
+
+    private final OutputStream mOutputStream;
+    private final List<Entry> mEntries = new ArrayList<>();
+    private final byte[] mWriteBuffer = new byte[8];
+    private Entry mCurrentEntry;
+    private long mWritten;
+    private boolean mClosed;
+
+    ZipArchiveWriter(OutputStream outputStream) {
+        mOutputStream = outputStream;
+    }
+
+    /**
+     * Starts deflated entry, sizes and checksum are written in data descriptor on closeEntry
+     * @param entryName entry name
+     * @param time entry modification time
+     * @throws IOException in case of errors with stream
+     */
+    void putNextEntry(String entryName, long time) throws IOException {
+        if (mCurrentEntry != null)
+            throw new IOException("Previous entry is not closed");
+
+        mCurrentEntry = new Entry(entryName.getBytes(StandardCharsets.UTF_8), javaToDosTime(time), mWritten);
+
+        writeInt(LOCSIG);
+        writeShort(VERSION_DEFAULT);
+        writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+        writeShort(METHOD_DEFLATED);
+        writeInt(mCurrentEntry.dosTime);
+        writeInt(0);
+        writeInt(0);
+        writeInt(0);
+        writeShort(mCurrentEntry.name.length);
+        writeShort(0);
+        writeBytes(mCurrentEntry.name, 0, mCurrentEntry.name.length);
+    }
+
+    /**
+     * Writes raw deflate data of the current entry
+     * @param b data
+     * @param off offset
+     * @param len length
+     * @throws IOException in case of errors with stream
+     */
+    void writeCompressed(byte[] b, int off, int len) throws IOException {
+        if (mCurrentEntry == null)
+            throw new IOException("No current entry");
+        writeBytes(b, off, len);
+        mCurrentEntry.compressedSize += len;
+    }
+
+    /**
+     * Completes current entry
+     * @param crc CRC32 of uncompressed data
+     * @param size uncompressed size
+     * @throws IOException in case of errors with stream
+     */
+    void closeEntry(long crc, long size) throws IOException {
+        Entry entry = mCurrentEntry;
+        if (entry == null)
+            throw new IOException("No current entry");
+
+        entry.crc = crc;
+        entry.size = size;
+
+        writeInt(EXTSIG);
+        writeInt(entry.crc);
+        if ((entry.compressedSize >= ZIP64_MAGICVAL) || (entry.size >= ZIP64_MAGICVAL)) {
+            writeLong(entry.compressedSize);
+            writeLong(entry.size);
+        } else {
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+        }
+
+        mEntries.add(entry);
+        mCurrentEntry = null;
+    }
+
+    private void writeCEN(Entry entry) throws IOException {
+        boolean hasZip64Size = (entry.compressedSize >= ZIP64_MAGICVAL) || (entry.size >= ZIP64_MAGICVAL);
+        boolean hasZip64Offset = entry.offset >= ZIP64_MAGICVAL;
+        int extraLength = (hasZip64Size ? 16 : 0) + (hasZip64Offset ? 8 : 0);
+        int version = extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFAULT;
+
+        writeInt(CENSIG);
+        writeShort(version);
+        writeShort(version);
+        writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+        writeShort(METHOD_DEFLATED);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(hasZip64Size ? ZIP64_MAGICVAL : entry.compressedSize);
+        writeInt(hasZip64Size ? ZIP64_MAGICVAL : entry.size);
+        writeShort(entry.name.length);
+        writeShort(extraLength > 0 ? extraLength + 4 : 0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(hasZip64Offset ? ZIP64_MAGICVAL : entry.offset);
+        writeBytes(entry.name, 0, entry.name.length);
+
+        if (extraLength > 0) {
+            writeShort(ZIP64_EXTID);
+            writeShort(extraLength);
+            if (hasZip64Size) {
+                writeLong(entry.size);
+                writeLong(entry.compressedSize);
+            }
+            if (hasZip64Offset) {
+                writeLong(entry.offset);
+            }
+        }
+    }
+
+    private void writeEND(long cenOffset, long cenLength) throws IOException {
+        long count = mEntries.size();
+        boolean hasZip64 = (count >= ZIP64_MAGICCOUNT) || (cenOffset >= ZIP64_MAGICVAL) || (cenLength >= ZIP64_MAGICVAL);
+
+        if (hasZip64) {
+            long zip64EndOffset = mWritten;
+
+            writeInt(ZIP64_ENDSIG);
+            writeLong(ZIP64_ENDHDR - 12);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(cenLength);
+            writeLong(cenOffset);
+
+            writeInt(ZIP64_LOCSIG);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+
+        writeInt(ENDSIG);
+        writeShort(0);
+        writeShort(0);
+        writeShort((int) Math.min(count, ZIP64_MAGICCOUNT));
+        writeShort((int) Math.min(count, ZIP64_MAGICCOUNT));
+        writeInt(Math.min(cenLength, ZIP64_MAGICVAL));
+        writeInt(Math.min(cenOffset, ZIP64_MAGICVAL));
+        writeShort(0);
+    }
+
+    /**
+     * Writes central directory and closes the underlying stream
+     * @throws IOException in case of errors with stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed)
+            return;
+        mClosed = true;
+
+        try (OutputStream outputStream = mOutputStream) {
+            if (mCurrentEntry != null)
+                throw new IOException("Current entry is not closed");
+
+            long cenOffset = mWritten;
+            for (Entry entry : mEntries) {
+                writeCEN(entry);
+            }
+            writeEND(cenOffset, mWritten - cenOffset);
+            outputStream.flush();
+        }
+    }
+
+    private void writeShort(int v) throws IOException {
+        mWriteBuffer[0] = (byte) v;
+        mWriteBuffer[1] = (byte) (v >>> 8);
+        writeBytes(mWriteBuffer, 0, 2);
+    }
+
+    private void writeInt(long v) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            mWriteBuffer[i] = (byte) (v >>> (i * 8));
+        }
+        writeBytes(mWriteBuffer, 0, 4);
+    }
+
+    private void writeLong(long v) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            mWriteBuffer[i] = (byte) (v >>> (i * 8));
+        }
+        writeBytes(mWriteBuffer, 0, 8);
+    }
+
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        mOutputStream.write(b, off, len);
+        mWritten += len;
+    }
+
+    private static long javaToDosTime(long time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int year = dateTime.getYear() - 1980;
+        if (year < 0) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) year << 25 | dateTime.getMonthValue() << 21 | dateTime.getDayOfMonth() << 16 |
+                dateTime.getHour() << 11 | dateTime.getMinute() << 5 | dateTime.getSecond() >> 1) & 0xFFFFFFFFL;
+    }
+}
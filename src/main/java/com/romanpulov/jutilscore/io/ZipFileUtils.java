@@ -1,13 +1,29 @@
 package com.romanpulov.jutilscore.io;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -18,15 +34,26 @@ import java.util.zip.ZipOutputStream;
 
 public class ZipFileUtils {
     public static final String ZIP_EXT = ".zip";
+    public static final int DEFAULT_PARALLEL_BLOCK_SIZE = 128 * 1024;
 
     public static String getZipFileName(String fileName){
+        return getArchiveFileName(fileName, ZIP_EXT);
+    }
+
+    /**
+     * Replaces file extension with archive extension
+     * @param fileName file name
+     * @param archiveExtension archive extension with leading dot
+     * @return archive file name
+     */
+    public static String getArchiveFileName(String fileName, String archiveExtension){
         int extensionPos = fileName.lastIndexOf(".");
         int pathPos = fileName.lastIndexOf(File.separator);
 
         if ((extensionPos == -1) || (pathPos > extensionPos))
-            return fileName + ZIP_EXT;
+            return fileName + archiveExtension;
         else
-            return fileName.substring(0, extensionPos) + ZIP_EXT;
+            return fileName.substring(0, extensionPos) + archiveExtension;
     }
 
     /**
@@ -37,22 +64,124 @@ public class ZipFileUtils {
      * @throws IOException exception in case of errors working with streams
      */
     public static void zipStream(String entryName, InputStream inputStream, OutputStream outputStream) throws IOException {
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)){
+        zipStream(entryName, inputStream, outputStream, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * ZIPs the stream to the output stream with the given compression level
+     * @param entryName file name
+     * @param inputStream input stream to zip
+     * @param outputStream output stream to write to
+     * @param level deflate level
+     * @throws IOException exception in case of errors working with streams
+     */
+    public static void zipStream(String entryName, InputStream inputStream, OutputStream outputStream, int level) throws IOException {
+        long length = FileUtils.getStreamLength(inputStream);
+
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new PooledBufferedOutputStream(outputStream, length))){
+            zipOutputStream.setLevel(level);
+
             //next entry
             zipOutputStream.putNextEntry(new ZipEntry(entryName));
 
             //write
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = inputStream.read(buffer)) > 0) {
-                zipOutputStream.write(buffer, 0, len);
-            }
+            FileUtils.copyStream(inputStream, zipOutputStream, length);
 
             //complete entry
             zipOutputStream.closeEntry();
         }
     }
 
+    /**
+     * ZIPs the stream to the output stream deflating blocks in parallel
+     * The result is a regular single entry ZIP archive
+     * @param entryName file name
+     * @param inputStream input stream to zip
+     * @param outputStream output stream to write to
+     * @param threadCount compression thread count, 1 or less for single threaded compression
+     * @param blockSize block size for parallel compression
+     * @throws IOException exception in case of errors working with streams
+     */
+    public static void zipStream(String entryName, InputStream inputStream, OutputStream outputStream, int threadCount, int blockSize) throws IOException {
+        zipStream(entryName, inputStream, outputStream, Deflater.DEFAULT_COMPRESSION, threadCount, blockSize);
+    }
+
+    /**
+     * ZIPs the stream to the output stream with the given compression level deflating blocks in parallel
+     * @param entryName file name
+     * @param inputStream input stream to zip
+     * @param outputStream output stream to write to
+     * @param level deflate level
+     * @param threadCount compression thread count, 1 or less for single threaded compression
+     * @param blockSize block size for parallel compression
+     * @throws IOException exception in case of errors working with streams
+     */
+    public static void zipStream(String entryName, InputStream inputStream, OutputStream outputStream, int level, int threadCount, int blockSize) throws IOException {
+        if (threadCount <= 1) {
+            zipStream(entryName, inputStream, outputStream, level);
+            return;
+        }
+
+        long length = FileUtils.getStreamLength(inputStream);
+
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(new PooledBufferedOutputStream(outputStream, length))) {
+            writer.putNextEntry(entryName, System.currentTimeMillis());
+
+            ParallelDeflater deflater = new ParallelDeflater(level, threadCount, blockSize);
+            deflater.deflate(inputStream, writer);
+
+            writer.closeEntry(deflater.getCrc(), deflater.getSize());
+        }
+    }
+
+    /**
+     * ZIPs the files to the output stream as archive entries, entries are deflated in parallel
+     * on a thread per processor
+     * @param files entry names and files, entries are written in the map order
+     * @param outputStream output stream to write to
+     * @throws IOException exception in case of errors working with files or streams
+     */
+    public static void zipFiles(Map<String, Path> files, OutputStream outputStream) throws IOException {
+        zipFiles(files, outputStream, Deflater.DEFAULT_COMPRESSION, null);
+    }
+
+    /**
+     * ZIPs the files to the output stream as archive entries, entries are deflated in parallel
+     * @param files entry names and files, entries are written in the map order
+     * @param outputStream output stream to write to
+     * @param level deflate level
+     * @param executor executor for entry compression or null for a thread per processor
+     * @throws IOException exception in case of errors working with files or streams
+     */
+    public static void zipFiles(Map<String, Path> files, OutputStream outputStream, int level, Executor executor) throws IOException {
+        zipFiles(files, outputStream, level, executor, null);
+    }
+
+    /**
+     * ZIPs the files to the output stream as archive entries, entries are deflated in parallel
+     * Deflated entries wait for writing in temp files, up to two entries per processor at once.
+     * @param files entry names and files, entries are written in the map order
+     * @param outputStream output stream to write to
+     * @param level deflate level
+     * @param executor executor for entry compression or null for a thread per processor
+     * @param tempFolder folder for deflated entries, usually the folder of the archive, or null for the default temp folder
+     * @throws IOException exception in case of errors working with files or streams
+     */
+    public static void zipFiles(Map<String, Path> files, OutputStream outputStream, int level, Executor executor, Path tempFolder)
+            throws IOException {
+        ExecutorService ownExecutor = executor == null ?
+                Executors.newFixedThreadPool(Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()))) :
+                null;
+
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(new PooledBufferedOutputStream(outputStream, -1))) {
+            new EntryDeflater(level, executor == null ? ownExecutor : executor, tempFolder,
+                    2 * Runtime.getRuntime().availableProcessors()).deflate(files, writer);
+        } finally {
+            if (ownExecutor != null)
+                ownExecutor.shutdownNow();
+        }
+    }
+
     /**
      * ZIPs the file to the same path with zip extension
      * @param filePath path to file
@@ -66,6 +195,10 @@ public class ZipFileUtils {
 
         File zipFile = new File(filePath + getZipFileName(fileName));
 
+        IoOperation operation = IoOperation.start(IoEvent.Operation.COMPRESS, sourceFile.getPath());
+        operation.setInputFile(sourceFile.getPath());
+        operation.setOutputFile(zipFile.getPath());
+
         try (InputStream inputStream = new FileInputStream(sourceFile);
              OutputStream outputStream = new FileOutputStream(zipFile)) {
             //init streams and entry
@@ -74,9 +207,12 @@ public class ZipFileUtils {
 
         } catch (IOException e) {
             e.printStackTrace();
+            operation.setError(e);
+            operation.finish(false);
             return null;
         }
 
+        operation.finish(true);
         return zipFile.getPath();
     }
 
@@ -88,17 +224,13 @@ public class ZipFileUtils {
      * @throws IOException in case of errors with streams
      */
     public static String unZipStream(InputStream inputStream, OutputStream outputStream) throws IOException {
-        try (ZipInputStream zipInputStream = new ZipInputStream(inputStream)) {
+        try (ZipInputStream zipInputStream = new ZipInputStream(
+                new PooledBufferedInputStream(inputStream, FileUtils.getStreamLength(inputStream)))) {
             ZipEntry entry = zipInputStream.getNextEntry();
 
             if (entry != null) {
-                if (zipInputStream.available() > 0) {
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = zipInputStream.read(buffer)) > 0) {
-                        outputStream.write(buffer, 0, len);
-                    }
-                }
+                //available() is only an estimate, entry end is detected by read
+                FileUtils.copyStream(zipInputStream, outputStream, entry.getSize());
                 return entry.getName();
             } else {
                 return null;
@@ -113,27 +245,150 @@ public class ZipFileUtils {
      * @return true if successful
      */
     public static boolean unZipFile(String filePath, String fileName) {
-        try (ZipFile zipFile = new ZipFile(filePath + fileName)) {
-
-            if (zipFile.entries().hasMoreElements()) {
-                ZipEntry zipEntry = zipFile.entries().nextElement();
-
-                try (InputStream inputStream = zipFile.getInputStream(zipEntry);
-                     OutputStream outputStream = new FileOutputStream(filePath + zipEntry.getName())
-                     ) {
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = inputStream.read(buffer)) > 0) {
-                        outputStream.write(buffer, 0, len);
-                    }
+        IoOperation operation = IoOperation.start(IoEvent.Operation.DECOMPRESS, filePath + fileName);
+        operation.setInputFile(filePath + fileName);
+
+        try (ZipIndex zipIndex = ZipIndex.open(filePath + fileName)) {
+
+            List<String> entryNames = zipIndex.getEntryNames();
+            if (!entryNames.isEmpty()) {
+                String entryName = entryNames.get(0);
+
+                //unzipped file is replaced only when completely written
+                String unZipFileName = filePath + entryName;
+                operation.setOutputFile(unZipFileName);
+                String tempFileName = FileUtils.getTempFileName(unZipFileName);
+                try {
+                    zipIndex.extract(entryName, tempFileName);
+                } catch (IOException e) {
+                    FileUtils.delete(tempFileName);
+                    throw e;
                 }
+                FileUtils.commitFile(tempFileName, unZipFileName);
             }
 
         } catch (IOException e) {
             e.printStackTrace();
+            operation.setError(e);
+            operation.finish(false);
             return false;
         }
 
+        operation.finish(true);
         return true;
     }
+
+    /**
+     * Unzips all entries of the archive to the folder
+     * Files are replaced only after all entries are unzipped, so errors leave the folder unchanged
+     * @param zipFileName archive file name
+     * @param destFolderName destination folder name
+     * @return unzipped entry names
+     * @throws IOException in case of errors with files, corrupted content or entries outside of the folder
+     */
+    public static List<String> unZipAll(String zipFileName, String destFolderName) throws IOException {
+        Path destFolder = Paths.get(destFolderName).toAbsolutePath().normalize();
+        List<String> result = new ArrayList<>();
+        List<String> destFileNames = new ArrayList<>();
+
+        try (ZipIndex zipIndex = ZipIndex.open(zipFileName)) {
+            for (ZipIndex.Entry entry : zipIndex.getEntries()) {
+                Path destPath = destFolder.resolve(entry.getName()).normalize();
+                if (!destPath.startsWith(destFolder) || destPath.equals(destFolder))
+                    throw new ZipException("Invalid ZIP entry name " + entry.getName());
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(destPath);
+                    continue;
+                }
+                Files.createDirectories(destPath.getParent());
+
+                destFileNames.add(destPath.toString());
+                zipIndex.extract(entry.getName(), FileUtils.getTempFileName(destPath.toString()));
+
+                result.add(entry.getName());
+            }
+
+            for (String destFileName : destFileNames) {
+                FileUtils.commitFile(FileUtils.getTempFileName(destFileName), destFileName);
+            }
+        } catch (IOException e) {
+            for (String destFileName : destFileNames) {
+                FileUtils.delete(FileUtils.getTempFileName(destFileName));
+            }
+            throw e;
+        }
+
+        return result;
+    }
+
+    /**
+     * Unzips first entry of the archive to the file
+     * Deflated content is inflated straight into the file channel, the file is preallocated to the entry size
+     * @param zipFileName archive file name
+     * @param destFileName destination file name
+     * @return zip entry or null if the archive is empty
+     * @throws IOException in case of errors with files or corrupted content
+     */
+    public static String unZipToFile(String zipFileName, String destFileName) throws IOException {
+        try (ZipIndex zipIndex = ZipIndex.open(zipFileName)) {
+            List<String> entryNames = zipIndex.getEntryNames();
+            if (entryNames.isEmpty())
+                return null;
+
+            zipIndex.extract(entryNames.get(0), destFileName);
+            return entryNames.get(0);
+        }
+    }
+
+    /**
+     * Inflates raw deflate data from the source channel position to the destination channel
+     * with direct buffers, checking entry size and CRC
+     */
+    static void inflateChannel(FileChannel sourceChannel, long position, FileChannel destChannel,
+                               String entryName, long entrySize, long entryCrc) throws IOException {
+        int bufferSize = BufferPool.getBufferSize(entrySize);
+        ByteBuffer input = ByteBuffer.allocateDirect(bufferSize);
+        ByteBuffer output = ByteBuffer.allocateDirect(bufferSize);
+        CRC32 crc = new CRC32();
+        long size = 0;
+
+        Inflater inflater = new Inflater(true);
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    input.clear();
+                    int len = sourceChannel.read(input, position);
+                    if (len < 0)
+                        throw new EOFException("Unexpected end of ZIP entry " + entryName);
+                    position += len;
+                    ProgressTracker.progress(len, 0);
+                    IoThrottle.acquire(len);
+                    input.flip();
+                    inflater.setInput(input);
+                }
+
+                output.clear();
+                if ((inflater.inflate(output) == 0) && inflater.needsDictionary())
+                    throw new ZipException("Invalid ZIP entry " + entryName);
+                output.flip();
+
+                crc.update(output);
+                output.rewind();
+                int outputLength = output.remaining();
+                size += outputLength;
+                while (output.hasRemaining()) {
+                    destChannel.write(output);
+                }
+                ProgressTracker.progress(0, outputLength);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid ZIP entry " + entryName + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        if ((size != entrySize) || (crc.getValue() != entryCrc))
+            throw new ZipException("Invalid ZIP entry size or CRC " + entryName);
+    }
 }
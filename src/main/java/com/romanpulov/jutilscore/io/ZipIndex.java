@@ -0,0 +1,514 @@
+package com.romanpulov.jutilscore.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Random access reader of ZIP archive based on its central directory
+ * The central directory is read once, entries can be streamed or extracted without reading the rest of the archive,
+ * byte ranges can be read from STORED entries. Reads are positional, so the index can be shared between threads.
+ */
+
+public class ZipIndex implements Closeable {
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int ZIP64_ENDSIG = 0x06064b50;
+    private static final int ZIP64_LOCSIG = 0x07064b50;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+    private static final int ZIP64_EXTID = 0x0001;
+
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+    private static final int ZIP64_LOCHDR = 20;
+    private static final int ZIP64_ENDHDR = 56;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final int FLAG_ENCRYPTED = 0x0001;
+
+    /**
+     * Archive entry from the central directory
+     */
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final int flags;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private volatile long dataOffset = -1;
+
+        Entry(String name, int method, int flags, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return ZipEntry.STORED or ZipEntry.DEFLATED for supported entries
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    private final String mFileName;
+    private final FileChannel mChannel;
+    private final Map<String, Entry> mEntries;
+
+    private ZipIndex(String fileName, FileChannel channel, Map<String, Entry> entries) {
+        mFileName = fileName;
+        mChannel = channel;
+        mEntries = entries;
+    }
+
+    /**
+     * Opens archive and reads its central directory
+     * @param fileName archive file name
+     * @return index
+     * @throws IOException in case of errors with the file or invalid archive
+     */
+    public static ZipIndex open(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        try {
+            return new ZipIndex(fileName, channel, readCentralDirectory(fileName, channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String getFileName() {
+        return mFileName;
+    }
+
+    /**
+     * Returns entry names in the central directory order
+     * @return entry names
+     */
+    public List<String> getEntryNames() {
+        return new ArrayList<>(mEntries.keySet());
+    }
+
+    /**
+     * Returns entries in the central directory order
+     * @return entries
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(mEntries.values()));
+    }
+
+    /**
+     * Returns entry by name
+     * @param entryName entry name
+     * @return entry or null if not found
+     */
+    public Entry getEntry(String entryName) {
+        return mEntries.get(entryName);
+    }
+
+    private Entry getExistingEntry(String entryName) throws ZipException {
+        Entry entry = mEntries.get(entryName);
+        if (entry == null)
+            throw new ZipException("ZIP entry not found: " + entryName);
+        if ((entry.flags & FLAG_ENCRYPTED) != 0)
+            throw new ZipException("Encrypted ZIP entry is not supported: " + entryName);
+        if ((entry.method != ZipEntry.STORED) && (entry.method != ZipEntry.DEFLATED))
+            throw new ZipException("Unsupported compression method " + entry.method + " of ZIP entry " + entryName);
+        return entry;
+    }
+
+    /**
+     * Returns position of entry data, local header is read on first use
+     */
+    private long getDataOffset(Entry entry) throws IOException {
+        long dataOffset = entry.dataOffset;
+        if (dataOffset < 0) {
+            ByteBuffer header = readFully(entry.localHeaderOffset, LOCHDR);
+            if (header.getInt(0) != LOCSIG)
+                throw new ZipException("Invalid local header of ZIP entry " + entry.name);
+            dataOffset = entry.localHeaderOffset + LOCHDR + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            if (dataOffset + entry.compressedSize > mChannel.size())
+                throw new ZipException("Invalid data of ZIP entry " + entry.name);
+            entry.dataOffset = dataOffset;
+        }
+        return dataOffset;
+    }
+
+    /**
+     * Opens stream with uncompressed entry content
+     * @param entryName entry name
+     * @return input stream
+     * @throws IOException in case of missing or unsupported entry
+     */
+    public InputStream getInputStream(String entryName) throws IOException {
+        Entry entry = getExistingEntry(entryName);
+        InputStream inputStream = new ChannelRangeInputStream(mChannel, getDataOffset(entry), entry.compressedSize);
+
+        if (entry.method == ZipEntry.STORED)
+            return new EntryCheckedInputStream(inputStream, entryName, entry.size, entry.crc);
+        else
+            return new EntryCheckedInputStream(new EntryInflaterInputStream(inputStream, BufferPool.getBufferSize(entry.compressedSize)),
+                    entryName, entry.size, entry.crc);
+    }
+
+    /**
+     * Opens stream with a byte range of STORED entry, no other data is read
+     * @param entryName entry name
+     * @param offset offset in entry content
+     * @param length range length
+     * @return input stream
+     * @throws IOException in case of missing entry, entry which is not STORED or range outside of the entry
+     */
+    public InputStream getRangeInputStream(String entryName, long offset, long length) throws IOException {
+        Entry entry = getExistingEntry(entryName);
+        if (entry.method != ZipEntry.STORED)
+            throw new ZipException("Byte range requires STORED ZIP entry: " + entryName);
+        if ((offset < 0) || (length < 0) || (offset + length > entry.size))
+            throw new IOException("Invalid range " + offset + ", " + length + " of ZIP entry " + entryName);
+
+        return new ChannelRangeInputStream(mChannel, getDataOffset(entry) + offset, length);
+    }
+
+    /**
+     * Extracts entry to the file, other entries are not read
+     * Deflated content is inflated straight into the file channel, stored content is copied through a buffer,
+     * both with size and CRC check
+     * @param entryName entry name
+     * @param destFileName destination file name
+     * @throws IOException in case of errors with files or corrupted content
+     */
+    public void extract(String entryName, String destFileName) throws IOException {
+        Entry entry = getExistingEntry(entryName);
+        long dataOffset = getDataOffset(entry);
+
+        try (RandomAccessFile destFile = new RandomAccessFile(destFileName, "rw")) {
+            //preallocated to the entry size
+            destFile.setLength(entry.size);
+            FileChannel destChannel = destFile.getChannel();
+
+            if (entry.method == ZipEntry.STORED) {
+                if (entry.compressedSize != entry.size)
+                    throw new ZipException("Invalid ZIP entry size or CRC " + entryName);
+
+                //read through a buffer instead of transferTo so the content is checked
+                CRC32 crc = new CRC32();
+                byte[] buf = BufferPool.acquire(entry.size);
+                try {
+                    long position = 0;
+                    while (position < entry.size) {
+                        ByteBuffer buffer = ByteBuffer.wrap(buf, 0, (int) Math.min(buf.length, IoThrottle.getTransferSize(entry.size - position)));
+                        int len = mChannel.read(buffer, dataOffset + position);
+                        if (len <= 0)
+                            throw new EOFException("Unexpected end of ZIP entry " + entryName);
+                        crc.update(buf, 0, len);
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            destChannel.write(buffer, position + buffer.position());
+                        }
+                        position += len;
+                        ProgressTracker.progress(len, len);
+                        IoThrottle.acquire(len);
+                    }
+                } finally {
+                    BufferPool.release(buf);
+                }
+
+                if (crc.getValue() != entry.crc)
+                    throw new ZipException("Invalid ZIP entry size or CRC " + entryName);
+            } else {
+                ZipFileUtils.inflateChannel(mChannel, dataOffset, destChannel, entryName, entry.size, entry.crc);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        return readFully(mChannel, position, length);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of ZIP archive");
+        }
+        return buffer;
+    }
+
+    private static Map<String, Entry> readCentralDirectory(String fileName, FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < ENDHDR)
+            throw new ZipException("Invalid ZIP archive " + fileName);
+
+        //END record is followed by the comment only
+        int tailLength = (int) Math.min(fileSize, ENDHDR + MAX_COMMENT_LENGTH);
+        long tailPosition = fileSize - tailLength;
+        ByteBuffer tail = readFully(channel, tailPosition, tailLength);
+
+        int endPos = -1;
+        for (int i = tailLength - ENDHDR; i >= 0; i--) {
+            if ((tail.getInt(i) == ENDSIG) && (i + ENDHDR + (tail.getShort(i + 20) & 0xFFFF) == tailLength)) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos < 0)
+            throw new ZipException("ZIP END header not found in " + fileName);
+
+        long entryCount = tail.getShort(endPos + 10) & 0xFFFF;
+        long cenSize = tail.getInt(endPos + 12) & ZIP64_MAGICVAL;
+        long cenOffset = tail.getInt(endPos + 16) & ZIP64_MAGICVAL;
+
+        if ((entryCount == ZIP64_MAGICCOUNT) || (cenSize == ZIP64_MAGICVAL) || (cenOffset == ZIP64_MAGICVAL)) {
+            long locatorPosition = tailPosition + endPos - ZIP64_LOCHDR;
+            if (locatorPosition >= 0) {
+                ByteBuffer locator = readFully(channel, locatorPosition, ZIP64_LOCHDR);
+                if (locator.getInt(0) == ZIP64_LOCSIG) {
+                    ByteBuffer zip64End = readFully(channel, locator.getLong(8), ZIP64_ENDHDR);
+                    if (zip64End.getInt(0) != ZIP64_ENDSIG)
+                        throw new ZipException("Invalid ZIP64 END header in " + fileName);
+                    entryCount = zip64End.getLong(32);
+                    cenSize = zip64End.getLong(40);
+                    cenOffset = zip64End.getLong(48);
+                }
+            }
+        }
+
+        if ((cenSize > Integer.MAX_VALUE) || (cenOffset + cenSize > fileSize))
+            throw new ZipException("Invalid ZIP central directory in " + fileName);
+
+        ByteBuffer cen = readFully(channel, cenOffset, (int) cenSize);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        int pos = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if ((pos + CENHDR > cen.limit()) || (cen.getInt(pos) != CENSIG))
+                throw new ZipException("Invalid ZIP central directory header in " + fileName);
+
+            int flags = cen.getShort(pos + 8) & 0xFFFF;
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long crc = cen.getInt(pos + 16) & ZIP64_MAGICVAL;
+            long compressedSize = cen.getInt(pos + 20) & ZIP64_MAGICVAL;
+            long size = cen.getInt(pos + 24) & ZIP64_MAGICVAL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = cen.getInt(pos + 42) & ZIP64_MAGICVAL;
+
+            if (pos + CENHDR + nameLength + extraLength + commentLength > cen.limit())
+                throw new ZipException("Invalid ZIP central directory header in " + fileName);
+
+            byte[] name = new byte[nameLength];
+            cen.get(pos + CENHDR, name);
+
+            //ZIP64 extra field has only the values which do not fit into the header
+            int extraPos = pos + CENHDR + nameLength;
+            int extraEnd = extraPos + extraLength;
+            while (extraPos + 4 <= extraEnd) {
+                int id = cen.getShort(extraPos) & 0xFFFF;
+                int length = cen.getShort(extraPos + 2) & 0xFFFF;
+                int valuePos = extraPos + 4;
+                if (id == ZIP64_EXTID) {
+                    if ((size == ZIP64_MAGICVAL) && (valuePos + 8 <= extraEnd)) {
+                        size = cen.getLong(valuePos);
+                        valuePos += 8;
+                    }
+                    if ((compressedSize == ZIP64_MAGICVAL) && (valuePos + 8 <= extraEnd)) {
+                        compressedSize = cen.getLong(valuePos);
+                        valuePos += 8;
+                    }
+                    if ((localHeaderOffset == ZIP64_MAGICVAL) && (valuePos + 8 <= extraEnd)) {
+                        localHeaderOffset = cen.getLong(valuePos);
+                    }
+                }
+                extraPos += 4 + length;
+            }
+
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), method, flags, crc, compressedSize, size, localHeaderOffset);
+            entries.put(entry.name, entry);
+
+            pos += CENHDR + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+    /**
+     * Stream of the channel range with positional reads
+     */
+    private static class ChannelRangeInputStream extends InputStream {
+        private final FileChannel mChannel;
+        private long mPosition;
+        private final long mEnd;
+
+        ChannelRangeInputStream(FileChannel channel, long position, long length) {
+            mChannel = channel;
+            mPosition = position;
+            mEnd = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mPosition >= mEnd)
+                return -1;
+            if (len == 0)
+                return 0;
+
+            int count = mChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, mEnd - mPosition)), mPosition);
+            if (count < 0)
+                throw new EOFException("Unexpected end of ZIP archive");
+            mPosition += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, mEnd - mPosition));
+            mPosition += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mEnd - mPosition);
+        }
+    }
+
+    /**
+     * Checks size and CRC of the entry content at the end of the stream
+     */
+    private static class EntryCheckedInputStream extends FilterInputStream {
+        private final String mEntryName;
+        private final long mSize;
+        private final long mCrc;
+        private final CRC32 mActualCrc = new CRC32();
+        private long mActualSize;
+
+        EntryCheckedInputStream(InputStream inputStream, String entryName, long size, long crc) {
+            super(inputStream);
+            mEntryName = entryName;
+            mSize = size;
+            mCrc = crc;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                mActualCrc.update(b, off, result);
+                mActualSize += result;
+            } else if ((result == -1) && ((mActualSize != mSize) || (mActualCrc.getValue() != mCrc))) {
+                throw new ZipException("Invalid ZIP entry size or CRC " + mEntryName);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) {
+            //all bytes should be checked
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Raw deflate stream, a dummy byte is added at the end of the data as the inflater may need it
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean mEndOfInput;
+
+        EntryInflaterInputStream(InputStream inputStream, int size) {
+            super(inputStream, new Inflater(true), size);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (mEndOfInput)
+                throw new EOFException("Unexpected end of ZIP entry");
+
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                mEndOfInput = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
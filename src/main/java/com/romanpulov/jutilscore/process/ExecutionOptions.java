@@ -0,0 +1,137 @@
+package com.romanpulov.jutilscore.process;
+
+import java.nio.charset.Charset;
+import java.time.Duration;
+
+/**
+ * Options of process execution with streamed output
+ */
+
+public class ExecutionOptions {
+    public static final int DEFAULT_CAPTURE_LIMIT = 64 * 1024;
+    public static final int DEFAULT_MAX_LINE_LENGTH = 64 * 1024;
+    public static final int CAPTURE_UNLIMITED = Integer.MAX_VALUE;
+    public static final int LINE_LENGTH_UNLIMITED = Integer.MAX_VALUE;
+
+    private boolean mergeErrorStream = false;
+    private int captureHeadLimit = DEFAULT_CAPTURE_LIMIT;
+    private int captureTailLimit = DEFAULT_CAPTURE_LIMIT;
+    private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+    private Charset charset = Charset.defaultCharset();
+    private ProcessExecutor.LineListener lineListener;
+    private ProcessExecutor.ChunkListener chunkListener;
+    private Duration timeout;
+
+    public boolean isMergeErrorStream() {
+        return mergeErrorStream;
+    }
+
+    /**
+     * Sets if stderr is merged into stdout, default is false
+     * @param mergeErrorStream true to merge
+     */
+    public void setMergeErrorStream(boolean mergeErrorStream) {
+        this.mergeErrorStream = mergeErrorStream;
+    }
+
+    public int getCaptureHeadLimit() {
+        return captureHeadLimit;
+    }
+
+    public int getCaptureTailLimit() {
+        return captureTailLimit;
+    }
+
+    /**
+     * Sets bytes of each stream kept in the result, 0 and 0 to capture nothing
+     * Buffers grow with the output, so the limits are not allocated upfront.
+     * @param headLimit bytes kept from the start of the output
+     * @param tailLimit bytes kept from the end of the output
+     */
+    public void setCaptureLimit(int headLimit, int tailLimit) {
+        if (headLimit < 0)
+            throw new RuntimeException("Invalid value for headLimit:" + headLimit);
+        if (tailLimit < 0)
+            throw new RuntimeException("Invalid value for tailLimit:" + tailLimit);
+        this.captureHeadLimit = headLimit;
+        this.captureTailLimit = tailLimit;
+    }
+
+    /**
+     * Keeps whole output of each stream in the result
+     */
+    public void setCaptureUnlimited() {
+        setCaptureLimit(CAPTURE_UNLIMITED, 0);
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Sets maximum line length in bytes, longer lines are passed to the line listener in parts
+     * Lines are split at character boundaries, the line buffer grows with the line up to the maximum.
+     * @param maxLineLength maximum line length, LINE_LENGTH_UNLIMITED to never split lines
+     */
+    public void setMaxLineLength(int maxLineLength) {
+        if (maxLineLength < 1)
+            throw new RuntimeException("Invalid value for maxLineLength:" + maxLineLength);
+        this.maxLineLength = maxLineLength;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets charset of the output, lines are split on CR and LF bytes so the charset should be ASCII compatible
+     * @param charset charset, default is the platform charset
+     */
+    public void setCharset(Charset charset) {
+        if (charset == null)
+            throw new RuntimeException("Invalid value for charset:null");
+        this.charset = charset;
+    }
+
+    public ProcessExecutor.LineListener getLineListener() {
+        return lineListener;
+    }
+
+    /**
+     * Sets listener of output lines, output is not split to lines without it
+     * @param lineListener listener or null
+     */
+    public void setLineListener(ProcessExecutor.LineListener lineListener) {
+        this.lineListener = lineListener;
+    }
+
+    public ProcessExecutor.ChunkListener getChunkListener() {
+        return chunkListener;
+    }
+
+    /**
+     * Sets listener of output bytes as they are read
+     * @param chunkListener listener or null
+     */
+    public void setChunkListener(ProcessExecutor.ChunkListener chunkListener) {
+        this.chunkListener = chunkListener;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets timeout after which the process and its descendants are killed
+     * @param timeout timeout or null for no timeout
+     */
+    public void setTimeout(Duration timeout) {
+        if ((timeout != null) && (timeout.isNegative() || timeout.isZero()))
+            throw new RuntimeException("Invalid value for timeout:" + timeout);
+        this.timeout = timeout;
+    }
+
+    OutputCapture createCapture() {
+        return (captureHeadLimit == 0) && (captureTailLimit == 0) ? null : new OutputCapture(captureHeadLimit, captureTailLimit);
+    }
+}
@@ -0,0 +1,95 @@
+package com.romanpulov.jutilscore.process;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Splits output bytes to lines like BufferedReader.readLine, on LF, CR or CRLF
+ * Lines longer than the maximum length are split at character boundaries.
+ */
+
+class LineSplitter {
+    private static final int INITIAL_LINE_SIZE = 8192;
+
+    private final ProcessExecutor.OutputSource mSource;
+    private final ProcessExecutor.LineListener mListener;
+    private final Charset mCharset;
+    private final int mMaxLineLength;
+    private byte[] mLine;
+    private int mLineLength;
+    private boolean mSkipLF;
+
+    LineSplitter(ProcessExecutor.OutputSource source, ProcessExecutor.LineListener listener, Charset charset, int maxLineLength) {
+        mSource = source;
+        mListener = listener;
+        mCharset = charset;
+        mMaxLineLength = maxLineLength;
+        mLine = new byte[Math.min(maxLineLength, INITIAL_LINE_SIZE)];
+    }
+
+    void write(byte[] b, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            if (c == '\n') {
+                if (mSkipLF)
+                    mSkipLF = false;
+                else
+                    emitLine();
+            } else if (c == '\r') {
+                mSkipLF = true;
+                emitLine();
+            } else {
+                mSkipLF = false;
+                if (mLineLength == mLine.length) {
+                    if (mLine.length < mMaxLineLength)
+                        mLine = Arrays.copyOf(mLine, (int) Math.min(2L * mLine.length, mMaxLineLength));
+                    else
+                        emitLinePart();
+                }
+                mLine[mLineLength++] = c;
+            }
+        }
+    }
+
+    /**
+     * Emits the last line without terminator
+     */
+    void finish() {
+        if (mLineLength > 0)
+            emitLine();
+    }
+
+    private void emitLine() {
+        String line = new String(mLine, 0, mLineLength, mCharset);
+        mLineLength = 0;
+        mListener.onLine(mSource, line);
+    }
+
+    /**
+     * Emits complete characters of the line, bytes of an incomplete character are kept for the next part
+     */
+    private void emitLinePart() {
+        CharsetDecoder decoder = mCharset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = ByteBuffer.wrap(mLine, 0, mLineLength);
+        CharBuffer out = CharBuffer.allocate((int) Math.ceil(mLineLength * (double) decoder.maxCharsPerByte()));
+        decoder.decode(in, out, false);
+
+        //a line shorter than a character is emitted as is
+        if (in.position() == 0) {
+            emitLine();
+            return;
+        }
+
+        int remaining = in.remaining();
+        System.arraycopy(mLine, in.position(), mLine, 0, remaining);
+        mLineLength = remaining;
+        mListener.onLine(mSource, out.flip().toString());
+    }
+}
@@ -0,0 +1,147 @@
+package com.romanpulov.jutilscore.process;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Bounded capture of process output keeping the first and the last bytes
+ * Output over the limits is counted but not kept, so a chatty process can not exhaust the memory.
+ * Bytes are kept as read and decoded only on request, so line terminators are preserved.
+ * The head buffer grows with the output, so a large head limit costs memory only when the output is large.
+ */
+
+public class OutputCapture {
+    private static final int INITIAL_HEAD_SIZE = 8192;
+    //some VMs reserve header words in arrays
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int mHeadLimit;
+    private byte[] mHead;
+    private final byte[] mTail;
+    private int mHeadLength;
+    private int mTailPosition;
+    private int mTailLength;
+    private long mTotalBytes;
+
+    /**
+     * @param headLimit bytes kept from the start of the output, Integer.MAX_VALUE to keep all output
+     * @param tailLimit bytes kept from the end of the output
+     */
+    public OutputCapture(int headLimit, int tailLimit) {
+        if (headLimit < 0)
+            throw new RuntimeException("Invalid value for headLimit:" + headLimit);
+        if (tailLimit < 0)
+            throw new RuntimeException("Invalid value for tailLimit:" + tailLimit);
+        mHeadLimit = Math.min(headLimit, MAX_ARRAY_SIZE);
+        mHead = new byte[Math.min(mHeadLimit, INITIAL_HEAD_SIZE)];
+        mTail = new byte[tailLimit];
+    }
+
+    private void ensureHeadCapacity(int capacity) {
+        if (capacity > mHead.length) {
+            //doubling keeps copying linear in the output size
+            int newLength = (int) Math.min(mHeadLimit, Math.max((long) mHead.length << 1, capacity));
+            mHead = Arrays.copyOf(mHead, newLength);
+        }
+    }
+
+    public synchronized void write(byte[] b, int off, int len) {
+        mTotalBytes += len;
+
+        int headCount = Math.min(len, mHeadLimit - mHeadLength);
+        ensureHeadCapacity(mHeadLength + headCount);
+        System.arraycopy(b, off, mHead, mHeadLength, headCount);
+        mHeadLength += headCount;
+        off += headCount;
+        len -= headCount;
+
+        if ((len == 0) || (mTail.length == 0))
+            return;
+
+        //only the last bytes fit into the ring buffer
+        if (len > mTail.length) {
+            off += len - mTail.length;
+            len = mTail.length;
+        }
+        int firstCount = Math.min(len, mTail.length - mTailPosition);
+        System.arraycopy(b, off, mTail, mTailPosition, firstCount);
+        System.arraycopy(b, off + firstCount, mTail, 0, len - firstCount);
+        mTailPosition = (mTailPosition + len) % mTail.length;
+        mTailLength = Math.min(mTail.length, mTailLength + len);
+    }
+
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * Returns number of bytes between head and tail which were not kept
+     * @return bytes count
+     */
+    public synchronized long getTruncatedBytes() {
+        return mTotalBytes - mHeadLength - mTailLength;
+    }
+
+    public boolean isTruncated() {
+        return getTruncatedBytes() > 0;
+    }
+
+    public synchronized byte[] getHead() {
+        return Arrays.copyOf(mHead, mHeadLength);
+    }
+
+    public synchronized byte[] getTail() {
+        byte[] result = new byte[mTailLength];
+        int start = (mTailPosition - mTailLength + mTail.length) % Math.max(mTail.length, 1);
+        int firstCount = Math.min(mTailLength, mTail.length - start);
+        System.arraycopy(mTail, start, result, 0, firstCount);
+        System.arraycopy(mTail, 0, result, firstCount, mTailLength - firstCount);
+        return result;
+    }
+
+    /**
+     * Returns kept bytes, the whole output if it is not truncated
+     * @return head followed by tail
+     */
+    public synchronized byte[] toByteArray() {
+        byte[] head = getHead();
+        byte[] tail = getTail();
+        byte[] result = new byte[head.length + tail.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+
+    /**
+     * Returns kept bytes without copying when there is no tail
+     * @return read-only buffer with head followed by tail
+     */
+    public synchronized ByteBuffer toByteBuffer() {
+        if (mTailLength == 0)
+            return ByteBuffer.wrap(mHead, 0, mHeadLength).asReadOnlyBuffer();
+        return ByteBuffer.wrap(toByteArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes kept output, truncated part is replaced with a marker line
+     * @param charset charset
+     * @return output
+     */
+    public synchronized String toString(Charset charset) {
+        long truncatedBytes = getTruncatedBytes();
+        if ((truncatedBytes == 0) && (mTailLength == 0))
+            return new String(mHead, 0, mHeadLength, charset);
+        if (truncatedBytes == 0)
+            return new String(toByteArray(), charset);
+
+        return new String(getHead(), charset) +
+                System.lineSeparator() + "... " + truncatedBytes + " bytes truncated ..." + System.lineSeparator() +
+                new String(getTail(), charset);
+    }
+
+    @Override
+    public String toString() {
+        return toString(Charset.defaultCharset());
+    }
+}
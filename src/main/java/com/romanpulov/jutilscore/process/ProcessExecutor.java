@@ -1,43 +1,403 @@
 package com.romanpulov.jutilscore.process;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * Process execution
+ * Static methods run a single command on the calling thread. An instance runs commands on shared virtual threads
+ * with a cap on processes running at once, timeouts and batches.
+ */
 public class ProcessExecutor {
     public record ExecutionResult(int exitCode, String output) {}
 
+    /**
+     * Result of execution with streamed output
+     * @param exitCode process exit code
+     * @param stdout captured stdout, merged with stderr if requested, null if capture is disabled
+     * @param stderr captured stderr, null if merged or capture is disabled
+     */
+    public record StreamingResult(int exitCode, OutputCapture stdout, OutputCapture stderr) {}
+
+    /**
+     * Result of a command of a batch
+     * @param index command index in the batch
+     * @param result execution result or null in case of error
+     * @param error error or null if successful
+     */
+    public record BatchResult(int index, ExecutionResult result, Throwable error) {
+        public boolean isTimedOut() {
+            return error instanceof ProcessTimeoutException;
+        }
+    }
+
+    public enum OutputSource {
+        STDOUT,
+        STDERR
+    }
+
+    public interface LineListener {
+        /**
+         * Called from the draining thread for every output line
+         * @param source output stream
+         * @param line line without terminator
+         */
+        void onLine(OutputSource source, String line);
+    }
+
+    public interface ChunkListener {
+        /**
+         * Called from the draining thread for every chunk of output, the buffer is reused after return
+         * @param source output stream
+         * @param buffer buffer
+         * @param offset chunk offset
+         * @param length chunk length
+         */
+        void onChunk(OutputSource source, byte[] buffer, int offset, int length);
+    }
+
+    private static final int DRAIN_BUFFER_SIZE = 8192;
+
+    private final int parallelism;
+    private final Deque<CommandTask> pendingTasks = new ArrayDeque<>();
+    private int runningCount;
+    private volatile Duration commandTimeout;
+
+    /**
+     * Creates executor running as many processes at once as there are processors
+     */
+    public ProcessExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism maximum processes running at once
+     */
+    public ProcessExecutor(int parallelism) {
+        if (parallelism < 1)
+            throw new RuntimeException("Invalid value for parallelism:" + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public Duration getCommandTimeout() {
+        return commandTimeout;
+    }
+
+    /**
+     * Sets timeout of each command, the process tree is killed on timeout
+     * @param commandTimeout timeout or null for no timeout
+     */
+    public void setCommandTimeout(Duration commandTimeout) {
+        if ((commandTimeout != null) && (commandTimeout.isNegative() || commandTimeout.isZero()))
+            throw new RuntimeException("Invalid value for commandTimeout:" + commandTimeout);
+        this.commandTimeout = commandTimeout;
+    }
+
+    /**
+     * Command running on the shared executor, the process is killed when the command is cancelled
+     * Commands wait in the queue without a thread until fewer than parallelism commands are running.
+     */
+    private class CommandTask {
+        private final String[] command;
+        private final CompletableFuture<ExecutionResult> future = new CompletableFuture<>();
+        private volatile Process process;
+        private volatile boolean cancelled;
+        private boolean started;
+
+        private CommandTask(String[] command) {
+            this.command = command;
+        }
+
+        private ExecutionResult execute() throws IOException, InterruptedException, ExecutionException {
+            if (cancelled)
+                throw new ProcessTimeoutException("Batch timed out before command started");
+
+            ExecutionResult result = executeMerged(commandTimeout, startedProcess -> {
+                process = startedProcess;
+                if (cancelled)
+                    destroyProcessTree(startedProcess);
+            }, command);
+
+            if (cancelled)
+                throw new ProcessTimeoutException("Batch timed out");
+            return result;
+        }
+
+        private void run() {
+            try {
+                future.complete(execute());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            } catch (Exception e) {
+                future.completeExceptionally(e instanceof ExecutionException ? e.getCause() : e);
+            } finally {
+                taskCompleted();
+            }
+        }
+
+        private void start() {
+            try {
+                ProcessThreads.EXECUTOR.execute(this::run);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                taskCompleted();
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            boolean queued;
+            synchronized (pendingTasks) {
+                queued = !started;
+            }
+            //queued command is skipped when its turn comes
+            if (queued)
+                future.completeExceptionally(new ProcessTimeoutException("Batch timed out before command started"));
+            Process startedProcess = process;
+            if (startedProcess != null)
+                destroyProcessTree(startedProcess);
+        }
+
+        private CompletableFuture<ExecutionResult> submit() {
+            //cancelling the future kills the process
+            future.whenComplete((result, e) -> {
+                if (future.isCancelled())
+                    cancel();
+            });
+            synchronized (pendingTasks) {
+                pendingTasks.add(this);
+            }
+            startPendingTasks();
+            return future;
+        }
+    }
+
+    private void startPendingTasks() {
+        while (true) {
+            CommandTask task;
+            synchronized (pendingTasks) {
+                if (runningCount >= parallelism)
+                    return;
+                do {
+                    task = pendingTasks.poll();
+                } while ((task != null) && task.cancelled);
+                if (task == null)
+                    return;
+                task.started = true;
+                runningCount++;
+            }
+            task.start();
+        }
+    }
+
+    private void taskCompleted() {
+        synchronized (pendingTasks) {
+            runningCount--;
+        }
+        startPendingTasks();
+    }
+
+    /**
+     * Runs command asynchronously with merged output
+     * @param command command and arguments
+     * @return future with execution result
+     */
+    public CompletableFuture<ExecutionResult> submit(String ...command) {
+        return new CommandTask(command).submit();
+    }
+
+    /**
+     * Runs commands concurrently and reports results as they complete
+     * Commands not completed within the batch timeout are killed and reported as timed out.
+     * @param commands commands with arguments
+     * @param batchTimeout timeout of the whole batch or null for no timeout
+     * @param listener called on the calling thread for every result as it completes, can be null
+     * @return results in completion order
+     * @throws InterruptedException if the calling thread is interrupted, running commands are killed
+     */
+    public List<BatchResult> executeBatch(List<String[]> commands, Duration batchTimeout, Consumer<BatchResult> listener)
+            throws InterruptedException {
+        BlockingQueue<BatchResult> completed = new LinkedBlockingQueue<>();
+        List<CommandTask> tasks = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            int index = i;
+            CommandTask task = new CommandTask(commands.get(i));
+            tasks.add(task);
+            task.submit().whenComplete((result, e) -> completed.add(new BatchResult(index, result,
+                    e instanceof CompletionException ? e.getCause() : e)));
+        }
+
+        long deadline = batchTimeout == null ? Long.MAX_VALUE : System.nanoTime() + batchTimeout.toNanos();
+        List<BatchResult> results = new ArrayList<>(commands.size());
+        try {
+            while (results.size() < commands.size()) {
+                BatchResult result = deadline == Long.MAX_VALUE ?
+                        completed.take() :
+                        completed.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (result == null) {
+                    //killed commands complete with timeout error
+                    tasks.forEach(CommandTask::cancel);
+                    deadline = Long.MAX_VALUE;
+                } else {
+                    results.add(result);
+                    if (listener != null)
+                        listener.accept(result);
+                }
+            }
+        } finally {
+            if (results.size() < commands.size())
+                tasks.forEach(CommandTask::cancel);
+        }
+
+        return results;
+    }
+
+    /**
+     * Kills the process and its descendants
+     * @param process process
+     */
+    public static void destroyProcessTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * Executes command with stderr merged into stdout, output is split to lines joined with the platform separator
+     * @param command command and arguments
+     * @return exit code and output
+     */
     public static ExecutionResult executeCommand(String ...command)
             throws IOException, InterruptedException, ExecutionException {
+        return executeMerged(null, null, command);
+    }
+
+    /**
+     * Executes command with stderr merged into stdout keeping the output bytes exactly as written
+     * Output is not split to lines, it is decoded on request with OutputCapture.toString(Charset).
+     * @param command command and arguments
+     * @return exit code and whole output in stdout
+     */
+    public static StreamingResult executeCommandRaw(String ...command)
+            throws IOException, InterruptedException, ExecutionException {
+        ExecutionOptions options = new ExecutionOptions();
+        options.setMergeErrorStream(true);
+        options.setCaptureUnlimited();
+
+        return execute(options, command);
+    }
+
+    private static ExecutionResult executeMerged(Duration timeout, Consumer<Process> startListener, String ...command)
+            throws IOException, InterruptedException, ExecutionException {
+        StringBuilder sb = new StringBuilder();
+
+        ExecutionOptions options = new ExecutionOptions();
+        options.setMergeErrorStream(true); // stderr merged into stdout
+        options.setCaptureLimit(0, 0);
+        options.setMaxLineLength(ExecutionOptions.LINE_LENGTH_UNLIMITED);
+        options.setTimeout(timeout);
+        options.setLineListener((source, line) -> sb.append(line).append(System.lineSeparator()));
+
+        int exitCode = execute(options, startListener, command).exitCode();
+
+        return new ExecutionResult(exitCode, sb.toString());
+    }
+
+    /**
+     * Executes command streaming its output to listeners as it arrives, stdout is drained on the calling thread
+     * @param options execution options
+     * @param command command and arguments
+     * @return exit code and bounded output capture
+     * @throws ProcessTimeoutException if the process is killed on timeout
+     */
+    public static StreamingResult execute(ExecutionOptions options, String ...command)
+            throws IOException, InterruptedException, ExecutionException {
+        return execute(options, null, command);
+    }
+
+    private static StreamingResult execute(ExecutionOptions options, Consumer<Process> startListener, String ...command)
+            throws IOException, InterruptedException, ExecutionException {
         ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true); // stderr merged into stdout
+        pb.redirectErrorStream(options.isMergeErrorStream());
 
         Process process = pb.start();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> timeoutFuture = options.getTimeout() == null ? null :
+                ProcessThreads.TIMEOUT_SCHEDULER.schedule(() -> {
+                    timedOut.set(true);
+                    destroyProcessTree(process);
+                }, options.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            if (startListener != null)
+                startListener.accept(process);
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<String> outputFuture = executor.submit(() -> {
-            StringBuilder sb = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line).append(System.lineSeparator());
-                }
-            }
-            return sb.toString();
-        });
+            OutputCapture stdout = options.createCapture();
+            OutputCapture stderr = options.isMergeErrorStream() ? null : options.createCapture();
+
+            Future<?> errorFuture = options.isMergeErrorStream() ? null : ProcessThreads.EXECUTOR.submit(() -> {
+                drain(process.getErrorStream(), OutputSource.STDERR, stderr, options);
+                return null;
+            });
+
+            drain(process.getInputStream(), OutputSource.STDOUT, stdout, options);
+            if (errorFuture != null)
+                errorFuture.get();
+
+            int exitCode = process.waitFor();
+            if (timedOut.get())
+                throw new ProcessTimeoutException("Process timed out after " + options.getTimeout());
 
-        int exitCode = process.waitFor();
-        executor.shutdown();
+            return new StreamingResult(exitCode, stdout, stderr);
+        } finally {
+            if (timeoutFuture != null)
+                timeoutFuture.cancel(false);
+            //process is not left running on errors
+            if (process.isAlive())
+                destroyProcessTree(process);
+        }
+    }
+
+    private static void drain(InputStream inputStream, OutputSource source, OutputCapture capture, ExecutionOptions options)
+            throws IOException {
+        ChunkListener chunkListener = options.getChunkListener();
+        LineSplitter lineSplitter = options.getLineListener() == null ? null :
+                new LineSplitter(source, options.getLineListener(), options.getCharset(), options.getMaxLineLength());
+
+        try (inputStream) {
+            byte[] buf = new byte[DRAIN_BUFFER_SIZE];
+            int len;
+            while ((len = inputStream.read(buf)) > 0) {
+                if (capture != null)
+                    capture.write(buf, 0, len);
+                if (chunkListener != null)
+                    chunkListener.onChunk(source, buf, 0, len);
+                if (lineSplitter != null)
+                    lineSplitter.write(buf, 0, len);
+            }
+        }
 
-        return new ExecutionResult(exitCode, outputFuture.get());
+        if (lineSplitter != null)
+            lineSplitter.finish();
     }
 
     public static ExecutionResult executePowershell(String scriptPath, String... args)
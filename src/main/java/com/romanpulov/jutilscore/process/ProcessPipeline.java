@@ -0,0 +1,215 @@
+package com.romanpulov.jutilscore.process;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pipeline of processes with stdout of each process connected to stdin of the next one
+ * Processes are connected with OS pipes, so data between them does not pass through the heap.
+ * Output of the last process goes to a file or is read as a stream, the pipes block a process producing
+ * faster than its consumer, so memory use does not depend on the output size.
+ * Stderr of all processes is discarded unless redirected.
+ */
+public class ProcessPipeline {
+    public interface StreamFunction<T> {
+        /**
+         * Reads pipeline output
+         * @param inputStream stdout of the last process, reading the end fails if any process exited with an error
+         * @return result
+         */
+        T apply(InputStream inputStream) throws IOException;
+    }
+
+    private final List<String[]> commands = new ArrayList<>();
+    private File inputFile;
+    private ProcessBuilder.Redirect errorRedirect = ProcessBuilder.Redirect.DISCARD;
+
+    /**
+     * @param command first command and arguments
+     */
+    public ProcessPipeline(String ...command) {
+        commands.add(command);
+    }
+
+    /**
+     * Adds process reading output of the previous one
+     * @param command command and arguments
+     * @return this pipeline
+     */
+    public ProcessPipeline pipe(String ...command) {
+        commands.add(command);
+        return this;
+    }
+
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    /**
+     * Sets file read by the first process, stdin of the first process is closed if not set
+     * @param inputFile input file or null
+     */
+    public void setInputFile(File inputFile) {
+        this.inputFile = inputFile;
+    }
+
+    public ProcessBuilder.Redirect getErrorRedirect() {
+        return errorRedirect;
+    }
+
+    /**
+     * Sets destination of stderr of all processes, default is discard
+     * @param errorRedirect redirect
+     */
+    public void setErrorRedirect(ProcessBuilder.Redirect errorRedirect) {
+        if ((errorRedirect == null) || (errorRedirect == ProcessBuilder.Redirect.PIPE))
+            throw new RuntimeException("Invalid value for errorRedirect:" + errorRedirect);
+        this.errorRedirect = errorRedirect;
+    }
+
+    private List<Process> start(ProcessBuilder.Redirect outputRedirect) throws IOException {
+        List<ProcessBuilder> builders = new ArrayList<>(commands.size());
+        for (String[] command : commands) {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectError(errorRedirect);
+            builders.add(pb);
+        }
+        if (inputFile != null)
+            builders.get(0).redirectInput(inputFile);
+        builders.get(builders.size() - 1).redirectOutput(outputRedirect);
+
+        List<Process> processes = ProcessBuilder.startPipeline(builders);
+        if (inputFile == null)
+            processes.get(0).getOutputStream().close();
+        return processes;
+    }
+
+    private static int[] waitFor(List<Process> processes) throws InterruptedException {
+        int[] exitCodes = new int[processes.size()];
+        for (int i = 0; i < exitCodes.length; i++)
+            exitCodes[i] = processes.get(i).waitFor();
+        return exitCodes;
+    }
+
+    private static void destroy(List<Process> processes) {
+        for (Process process : processes)
+            if (process.isAlive())
+                ProcessExecutor.destroyProcessTree(process);
+    }
+
+    private static String getFailureMessage(int[] exitCodes) {
+        for (int i = 0; i < exitCodes.length; i++)
+            if (exitCodes[i] != 0)
+                return "Pipeline process " + i + " exited with code " + exitCodes[i];
+        return null;
+    }
+
+    /**
+     * Runs pipeline writing output of the last process to a file
+     * @param redirect output destination, usually Redirect.to or Redirect.appendTo
+     * @return exit codes of the processes
+     */
+    public int[] redirectTo(ProcessBuilder.Redirect redirect) throws IOException, InterruptedException {
+        if ((redirect == null) || (redirect == ProcessBuilder.Redirect.PIPE))
+            throw new RuntimeException("Invalid value for redirect:" + redirect);
+        List<Process> processes = start(redirect);
+        try {
+            return waitFor(processes);
+        } finally {
+            destroy(processes);
+        }
+    }
+
+    /**
+     * Runs pipeline writing output of the last process to a file
+     * @param file output file, overwritten if exists
+     * @return exit codes of the processes
+     */
+    public int[] redirectTo(File file) throws IOException, InterruptedException {
+        return redirectTo(ProcessBuilder.Redirect.to(file));
+    }
+
+    /**
+     * Runs pipeline copying output of the last process to the stream, the stream is not closed
+     * @param outputStream output stream
+     * @return exit codes of the processes
+     */
+    public int[] transferTo(OutputStream outputStream) throws IOException, InterruptedException {
+        List<Process> processes = start(ProcessBuilder.Redirect.PIPE);
+        try {
+            try (InputStream inputStream = processes.get(processes.size() - 1).getInputStream()) {
+                inputStream.transferTo(outputStream);
+            }
+            return waitFor(processes);
+        } finally {
+            destroy(processes);
+        }
+    }
+
+    /**
+     * Runs pipeline with output of the last process read by the function, for example a compressor or a backup
+     * Reaching the end of the stream fails with IOException if any process exited with an error,
+     * so a consumer reading to the end does not complete successfully with incomplete output.
+     * Processes still running when the function returns are killed.
+     * @param function output consumer
+     * @param <T> result type
+     * @return function result
+     */
+    public <T> T consume(StreamFunction<T> function) throws IOException, InterruptedException {
+        List<Process> processes = start(ProcessBuilder.Redirect.PIPE);
+        try (InputStream inputStream = new CheckedInputStream(processes)) {
+            return function.apply(inputStream);
+        } finally {
+            destroy(processes);
+        }
+    }
+
+    /**
+     * Stdout of the last process checking exit codes at the end
+     */
+    private static class CheckedInputStream extends FilterInputStream {
+        private final List<Process> mProcesses;
+        private boolean mChecked;
+
+        private CheckedInputStream(List<Process> processes) {
+            super(processes.get(processes.size() - 1).getInputStream());
+            mProcesses = Collections.unmodifiableList(processes);
+        }
+
+        private void checkExitCodes() throws IOException {
+            if (mChecked)
+                return;
+            try {
+                String failureMessage = getFailureMessage(waitFor(mProcesses));
+                if (failureMessage != null)
+                    throw new IOException(failureMessage);
+                mChecked = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for pipeline", e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result == -1)
+                checkExitCodes();
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result == -1)
+                checkExitCodes();
+            return result;
+        }
+    }
+}
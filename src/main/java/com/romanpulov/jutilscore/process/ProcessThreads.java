@@ -0,0 +1,22 @@
+package com.romanpulov.jutilscore.process;
+
+import com.romanpulov.jutilscore.io.VirtualThreads;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Shared threads for process execution
+ * Tasks run on virtual threads when the runtime supports them, otherwise on a cached pool of daemon threads
+ */
+
+class ProcessThreads {
+    static final ExecutorService EXECUTOR = VirtualThreads.newExecutor("jutils-process");
+
+    static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jutils-process-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+}
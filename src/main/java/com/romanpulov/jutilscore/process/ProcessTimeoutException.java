@@ -0,0 +1,15 @@
+package com.romanpulov.jutilscore.process;
+
+import java.io.IOException;
+
+/**
+ * Process was killed because it did not complete in time
+ */
+
+public class ProcessTimeoutException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ProcessTimeoutException(String message) {
+        super(message);
+    }
+}
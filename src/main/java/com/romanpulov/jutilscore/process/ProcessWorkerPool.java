@@ -0,0 +1,420 @@
+package com.romanpulov.jutilscore.process;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of long-lived worker processes exchanging requests and responses over stdin and stdout
+ * A request is sent to an idle worker, so each call costs a pipe round-trip instead of a process start.
+ * Workers are started on demand up to the pool size, stderr is merged into the response.
+ * Requests over the pool size wait in a queue without a thread until a request completes.
+ * A worker is replaced when it dies, fails a health check, times out or has served the maximum number of requests.
+ * Options are set before the first request.
+ */
+public class ProcessWorkerPool implements AutoCloseable {
+    /**
+     * Framing of requests and responses
+     */
+    public interface Protocol {
+        /**
+         * Writes request to worker stdin, the writer is flushed by the caller
+         * @param writer worker stdin
+         * @param request request
+         */
+        void writeRequest(BufferedWriter writer, String request) throws IOException;
+
+        /**
+         * Reads response from worker stdout
+         * @param reader worker stdout
+         * @return response or null if the worker closed its output
+         */
+        String readResponse(BufferedReader reader) throws IOException;
+    }
+
+    public static final String DEFAULT_DELIMITER = "--jutils-worker-end--";
+
+    /**
+     * Request is a line, response is lines up to the delimiter line written by the worker
+     * @param delimiter response delimiter line
+     * @return protocol
+     */
+    public static Protocol delimitedProtocol(String delimiter) {
+        return new DelimitedProtocol(delimiter, false);
+    }
+
+    /**
+     * Request is a shell command line followed by printing of the delimiter on a new line, for workers like sh or bash
+     * Output of the command without a trailing newline is returned as is.
+     * @return protocol
+     */
+    public static Protocol shellProtocol() {
+        return new DelimitedProtocol(DEFAULT_DELIMITER, true);
+    }
+
+    private static class DelimitedProtocol implements Protocol {
+        private final String delimiter;
+        private final boolean echoDelimiter;
+
+        private DelimitedProtocol(String delimiter, boolean echoDelimiter) {
+            if ((delimiter == null) || delimiter.isEmpty())
+                throw new RuntimeException("Invalid value for delimiter:" + delimiter);
+            this.delimiter = delimiter;
+            this.echoDelimiter = echoDelimiter;
+        }
+
+        @Override
+        public void writeRequest(BufferedWriter writer, String request) throws IOException {
+            writer.write(request);
+            writer.newLine();
+            if (echoDelimiter) {
+                //output without trailing newline does not join the delimiter line
+                writer.write("printf '\\n%s\\n' '" + delimiter + "'");
+                writer.newLine();
+            }
+        }
+
+        @Override
+        public String readResponse(BufferedReader reader) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals(delimiter)) {
+                    //newline printed before the delimiter is not a part of the output
+                    if (echoDelimiter && (sb.length() > 0))
+                        sb.setLength(sb.length() - System.lineSeparator().length());
+                    return sb.toString();
+                }
+                sb.append(line).append(System.lineSeparator());
+            }
+            return null;
+        }
+    }
+
+    private static class Worker {
+        private final Process process;
+        private final BufferedWriter writer;
+        private final BufferedReader reader;
+        private int uses;
+        private long lastUsedNanos;
+
+        private Worker(Process process, Charset charset) {
+            this.process = process;
+            this.writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), charset));
+            this.reader = new BufferedReader(new InputStreamReader(process.getInputStream(), charset));
+            this.lastUsedNanos = System.nanoTime();
+        }
+    }
+
+    private final String[] command;
+    private final Protocol protocol;
+    private final int size;
+    private final Deque<PendingRequest> pendingRequests = new ArrayDeque<>();
+    private int runningCount;
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger startedCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    private Charset charset = Charset.defaultCharset();
+    private int maxUses;
+    private Duration requestTimeout;
+    private String healthCheckRequest;
+    private Duration healthCheckInterval = Duration.ZERO;
+
+    /**
+     * @param size maximum number of worker processes
+     * @param protocol request and response framing
+     * @param command worker command and arguments
+     */
+    public ProcessWorkerPool(int size, Protocol protocol, String ...command) {
+        if (size < 1)
+            throw new RuntimeException("Invalid value for size:" + size);
+        this.size = size;
+        this.protocol = protocol;
+        this.command = command;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public int getMaxUses() {
+        return maxUses;
+    }
+
+    /**
+     * Sets number of requests after which a worker is replaced
+     * @param maxUses number of requests, 0 for unlimited
+     */
+    public void setMaxUses(int maxUses) {
+        if (maxUses < 0)
+            throw new RuntimeException("Invalid value for maxUses:" + maxUses);
+        this.maxUses = maxUses;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Sets request timeout, the worker is killed and replaced on timeout
+     * @param requestTimeout timeout or null for no timeout
+     */
+    public void setRequestTimeout(Duration requestTimeout) {
+        if ((requestTimeout != null) && (requestTimeout.isNegative() || requestTimeout.isZero()))
+            throw new RuntimeException("Invalid value for requestTimeout:" + requestTimeout);
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Sets health check sent to a worker idle for longer than the interval before it gets a request
+     * A worker is replaced if the health check fails or times out.
+     * @param request health check request or null for no health check
+     * @param interval idle interval, zero to check before every request
+     */
+    public void setHealthCheck(String request, Duration interval) {
+        if ((interval == null) || interval.isNegative())
+            throw new RuntimeException("Invalid value for interval:" + interval);
+        this.healthCheckRequest = request;
+        this.healthCheckInterval = interval;
+    }
+
+    /**
+     * @return number of worker processes started so far
+     */
+    public int getStartedCount() {
+        return startedCount.get();
+    }
+
+    private static class PendingRequest {
+        private final String request;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private PendingRequest(String request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * Sends request to an idle worker and waits for the response
+     * @param request request
+     * @return response
+     * @throws ProcessTimeoutException if the response is not received in time
+     * @throws IOException if the worker fails, the worker is replaced for the next request
+     * @throws InterruptedException if the calling thread is interrupted, the request is cancelled if not started yet
+     */
+    public String execute(String request) throws IOException, InterruptedException {
+        CompletableFuture<String> future = submit(request);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Sends request asynchronously
+     * @param request request
+     * @return future with response, cancelling the future before the request is sent skips it
+     */
+    public CompletableFuture<String> submit(String request) {
+        PendingRequest pendingRequest = new PendingRequest(request);
+        synchronized (pendingRequests) {
+            pendingRequests.add(pendingRequest);
+        }
+        startPendingRequests();
+        return pendingRequest.future;
+    }
+
+    private void startPendingRequests() {
+        while (true) {
+            PendingRequest pendingRequest;
+            synchronized (pendingRequests) {
+                if (runningCount >= size)
+                    return;
+                do {
+                    pendingRequest = pendingRequests.poll();
+                } while ((pendingRequest != null) && pendingRequest.future.isDone());
+                if (pendingRequest == null)
+                    return;
+                runningCount++;
+            }
+
+            PendingRequest startedRequest = pendingRequest;
+            try {
+                ProcessThreads.EXECUTOR.execute(() -> run(startedRequest));
+            } catch (RuntimeException e) {
+                startedRequest.future.completeExceptionally(e);
+                requestCompleted();
+            }
+        }
+    }
+
+    private void run(PendingRequest pendingRequest) {
+        try {
+            Worker worker = acquireWorker();
+            boolean healthy = false;
+            try {
+                String response = exchange(worker, pendingRequest.request);
+                worker.uses++;
+                healthy = true;
+                pendingRequest.future.complete(response);
+            } finally {
+                releaseWorker(worker, healthy);
+            }
+        } catch (Exception e) {
+            pendingRequest.future.completeExceptionally(e);
+        } finally {
+            requestCompleted();
+        }
+    }
+
+    private void requestCompleted() {
+        synchronized (pendingRequests) {
+            runningCount--;
+        }
+        startPendingRequests();
+    }
+
+    private Worker acquireWorker() throws IOException {
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            if (isHealthy(worker))
+                return worker;
+            destroyWorker(worker);
+        }
+        return startWorker();
+    }
+
+    private boolean isHealthy(Worker worker) {
+        if (!worker.process.isAlive())
+            return false;
+        if ((healthCheckRequest == null) ||
+                (System.nanoTime() - worker.lastUsedNanos < healthCheckInterval.toNanos()))
+            return true;
+        try {
+            exchange(worker, healthCheckRequest);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private String exchange(Worker worker, String request) throws IOException {
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> timeoutFuture = requestTimeout == null ? null :
+                ProcessThreads.TIMEOUT_SCHEDULER.schedule(() -> {
+                    timedOut.set(true);
+                    ProcessExecutor.destroyProcessTree(worker.process);
+                }, requestTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            protocol.writeRequest(worker.writer, request);
+            worker.writer.flush();
+            String response = protocol.readResponse(worker.reader);
+            if (timedOut.get())
+                throw new ProcessTimeoutException("Worker request timed out after " + requestTimeout);
+            if (response == null)
+                throw new IOException("Worker closed output, exit code " + worker.process.waitFor());
+            worker.lastUsedNanos = System.nanoTime();
+            return response;
+        } catch (IOException e) {
+            if (timedOut.get() && !(e instanceof ProcessTimeoutException))
+                throw new ProcessTimeoutException("Worker request timed out after " + requestTimeout);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Worker closed output", e);
+        } finally {
+            if (timeoutFuture != null)
+                timeoutFuture.cancel(false);
+        }
+    }
+
+    private Worker startWorker() throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        Worker worker = new Worker(pb.start(), charset);
+        startedCount.incrementAndGet();
+        synchronized (workers) {
+            workers.add(worker);
+        }
+        if (closed)
+            destroyWorker(worker);
+        return worker;
+    }
+
+    private void releaseWorker(Worker worker, boolean healthy) {
+        if (healthy && !closed && ((maxUses == 0) || (worker.uses < maxUses)))
+            idleWorkers.add(worker);
+        else
+            destroyWorker(worker);
+    }
+
+    private void destroyWorker(Worker worker) {
+        synchronized (workers) {
+            workers.remove(worker);
+        }
+        //closing stdin lets the worker exit by itself
+        try {
+            worker.writer.close();
+        } catch (IOException ignored) {
+        }
+        ProcessExecutor.destroyProcessTree(worker.process);
+    }
+
+    /**
+     * Kills all workers, requests in progress fail
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<PendingRequest> closingRequests;
+        synchronized (pendingRequests) {
+            closingRequests = new ArrayList<>(pendingRequests);
+            pendingRequests.clear();
+        }
+        closingRequests.forEach(pendingRequest -> pendingRequest.future.completeExceptionally(new IOException("Worker pool closed")));
+        idleWorkers.clear();
+        List<Worker> closingWorkers;
+        synchronized (workers) {
+            closingWorkers = new ArrayList<>(workers);
+        }
+        closingWorkers.forEach(this::destroyWorker);
+    }
+}
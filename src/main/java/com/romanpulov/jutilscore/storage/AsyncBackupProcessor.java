@@ -0,0 +1,46 @@
+package com.romanpulov.jutilscore.storage;
+
+import com.romanpulov.jutilscore.io.ProgressTracker;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Backup processor with non-blocking backup and restore
+ * Operations run the blocking methods on an executor and complete with their result, null means failure.
+ * Progress is reported to the listener from the executor thread, cancelling the future stops the copy
+ * at the next buffer and removes the incomplete archive or restored file.
+ */
+
+public interface AsyncBackupProcessor extends BackupProcessor {
+
+    default CompletableFuture<String> createRollingBackupAsync() {
+        return createRollingBackupAsync(null, null);
+    }
+
+    /**
+     * Creates rolling backup asynchronously
+     * @param executor executor or null for the default one with virtual threads where available
+     * @param listener progress listener, can be null
+     * @return future with backup file name or null if not successful
+     */
+    default CompletableFuture<String> createRollingBackupAsync(Executor executor, ProgressTracker.Listener listener) {
+        return ProgressTracker.supplyAsync(this::createRollingBackup,
+                executor == null ? BackupExecutors.getDefaultExecutor() : executor, listener);
+    }
+
+    default CompletableFuture<String> restoreBackupAsync() {
+        return restoreBackupAsync(null, null);
+    }
+
+    /**
+     * Restores backup asynchronously
+     * @param executor executor or null for the default one with virtual threads where available
+     * @param listener progress listener, can be null
+     * @return future with restored file name or null if not successful
+     */
+    default CompletableFuture<String> restoreBackupAsync(Executor executor, ProgressTracker.Listener listener) {
+        return ProgressTracker.supplyAsync(this::restoreBackup,
+                executor == null ? BackupExecutors.getDefaultExecutor() : executor, listener);
+    }
+}
@@ -0,0 +1,18 @@
+package com.romanpulov.jutilscore.storage;
+
+import com.romanpulov.jutilscore.io.VirtualThreads;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Default executor for asynchronous backups
+ * Virtual threads are used when the runtime supports them, otherwise a cached pool of daemon threads
+ */
+
+class BackupExecutors {
+    private static final Executor DEFAULT_EXECUTOR = VirtualThreads.newExecutor("jutils-backup");
+
+    static Executor getDefaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+}
@@ -0,0 +1,212 @@
+package com.romanpulov.jutilscore.storage;
+
+import com.romanpulov.jutilscore.io.FileUtils;
+import com.romanpulov.jutilscore.io.LengthHintInputStream;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Integrity manifest of backup archive copies
+ * Size, modification time and CRC32C of the source and of the archive are kept for each backup, newest first,
+ * in a file next to the archive. Copies are matched to entries by archive size and checksum,
+ * so renaming copies on rotation does not affect the manifest.
+ */
+
+public class BackupManifest {
+    public static final String MANIFEST_EXT = ".manifest";
+    private static final int CHECKSUM_BUFFER_SIZE = 256 * 1024;
+
+    public record Entry(long sourceSize, long sourceLastModified, long sourceChecksum,
+                        long archiveSize, long archiveLastModified, long archiveChecksum) {}
+
+    private final String mArchiveFileName;
+
+    /**
+     * @param archiveFileName full archive file name the manifest is kept for
+     */
+    public BackupManifest(String archiveFileName) {
+        mArchiveFileName = archiveFileName;
+    }
+
+    public String getManifestFileName() {
+        return mArchiveFileName + MANIFEST_EXT;
+    }
+
+    /**
+     * Returns manifest entries
+     * @return entries, newest first, empty if there is no manifest
+     * @throws IOException in case of errors reading the manifest
+     */
+    public List<Entry> getEntries() throws IOException {
+        List<Entry> result = new ArrayList<>();
+        File manifestFile = new File(getManifestFileName());
+        if (manifestFile.exists()) {
+            for (String line : Files.readAllLines(manifestFile.toPath(), StandardCharsets.US_ASCII)) {
+                if (!line.isEmpty()) {
+                    String[] values = line.split("\t");
+                    try {
+                        result.add(new Entry(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2], 16),
+                                Long.parseLong(values[3]), Long.parseLong(values[4]), Long.parseLong(values[5], 16)));
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        throw new IOException("Invalid backup manifest " + manifestFile.getPath(), e);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds entry of the new backup and removes entries over keep count
+     * @param entry entry
+     * @param keepCount number of entries to keep, same as number of kept copies
+     * @throws IOException in case of errors writing the manifest
+     */
+    public void addEntry(Entry entry, int keepCount) throws IOException {
+        List<Entry> entries = getEntries();
+        entries.add(0, entry);
+
+        Path manifestPath = Paths.get(getManifestFileName());
+        Path tempPath = Paths.get(FileUtils.getTempFileName(getManifestFileName()));
+
+        try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.US_ASCII)) {
+            for (Entry e : entries.subList(0, Math.min(keepCount, entries.size()))) {
+                writer.write(e.sourceSize() + "\t" + e.sourceLastModified() + "\t" + Long.toHexString(e.sourceChecksum()) + "\t" +
+                        e.archiveSize() + "\t" + e.archiveLastModified() + "\t" + Long.toHexString(e.archiveChecksum()));
+                writer.write('\n');
+            }
+        }
+
+        FileUtils.commitFile(tempPath.toString(), manifestPath.toString());
+    }
+
+    /**
+     * Verifies archive copy against the manifest entries
+     * @param file archive copy
+     * @param entries manifest entries
+     * @param position position of the copy, newest first
+     * @return verification status
+     */
+    static BackupVerification.Status verify(File file, List<Entry> entries, int position) throws IOException {
+        long size = file.length();
+        boolean hasSize = false;
+        for (Entry entry : entries) {
+            hasSize |= entry.archiveSize() == size;
+        }
+
+        //checksum is calculated only when there is an entry to match
+        if (hasSize) {
+            long checksum = checksum(file.toPath());
+            for (Entry entry : entries) {
+                if ((entry.archiveSize() == size) && (entry.archiveChecksum() == checksum))
+                    return BackupVerification.Status.VALID;
+            }
+        }
+
+        //copies older than the manifest entries were created before the manifest
+        return position < entries.size() ? BackupVerification.Status.CORRUPTED : BackupVerification.Status.UNVERIFIED;
+    }
+
+    /**
+     * Calculates CRC32C of the file
+     * @param path file
+     * @return checksum
+     */
+    public static long checksum(Path path) throws IOException {
+        //channel reads to a direct buffer, mapped files could not be renamed or deleted on Windows until unmapped by GC
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Counts and checksums the stream passing through, the length of the source is kept for buffer sizing
+     */
+    static class ChecksumInputStream extends LengthHintInputStream {
+        private final CRC32C mCrc = new CRC32C();
+        private final byte[] mSingleByte = new byte[1];
+        private long mSize;
+
+        ChecksumInputStream(InputStream in) {
+            super(in, FileUtils.getStreamLength(in));
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(mSingleByte, 0, 1) == -1 ? -1 : mSingleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                mCrc.update(b, off, result);
+                mSize += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) {
+            //all bytes should be checksummed
+            return 0;
+        }
+
+        long getSize() {
+            return mSize;
+        }
+
+        long getChecksum() {
+            return mCrc.getValue();
+        }
+    }
+
+    /**
+     * Checksums the stream passing through
+     */
+    static class ChecksumOutputStream extends FilterOutputStream {
+        private final CRC32C mCrc = new CRC32C();
+
+        ChecksumOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCrc.update(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCrc.update(b, off, len);
+        }
+
+        long getChecksum() {
+            return mCrc.getValue();
+        }
+    }
+}
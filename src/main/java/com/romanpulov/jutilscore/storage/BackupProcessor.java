@@ -3,6 +3,7 @@ package com.romanpulov.jutilscore.storage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public interface BackupProcessor {
     String getDataFileName();
@@ -14,4 +15,17 @@ public interface BackupProcessor {
     String createRollingBackup();
     String restoreBackup();
     InputStream createBackupInputStream(String backupFileName) throws IOException;
+
+    default List<BackupVerification> verifyBackups() {
+        return verifyBackups(null);
+    }
+
+    /**
+     * Verifies retained backup archives against the backup manifest in parallel
+     * @param executor executor or null for the default one with virtual threads where available
+     * @return verification results or null in case of errors, empty for backups without archive manifest
+     */
+    default List<BackupVerification> verifyBackups(Executor executor) {
+        return BackupUtils.verifyBackups(getBackupFolderName(), getBackupFileName(), executor);
+    }
 }
@@ -0,0 +1,148 @@
+package com.romanpulov.jutilscore.storage;
+
+import com.romanpulov.jutilscore.io.IoThrottle;
+import com.romanpulov.jutilscore.io.TokenBucket;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Schedules rolling backups of backup processors
+ * Backups to the same backup folder run one at a time so rotations of a copy chain never overlap.
+ * Requests for a backup file that is already waiting are coalesced into the waiting one and share its result.
+ * The number of backups running at once and the total rate of backup I/O are limited for all folders,
+ * folders ready to run wait in a queue without holding a thread until a running backup completes.
+ */
+
+public class BackupScheduler {
+    private final Executor executor;
+    private final int maxConcurrentBackups;
+    private final TokenBucket throttle;
+    private final Map<String, FolderQueue> folderQueues = new HashMap<>();
+    private final Deque<String> readyFolders = new ArrayDeque<>();
+    private int runningCount;
+
+    private static class Request {
+        private BackupProcessor processor;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Request(BackupProcessor processor) {
+            this.processor = processor;
+        }
+    }
+
+    private static class FolderQueue {
+        private Request running;
+        private final Map<String, Request> pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * @param maxConcurrentBackups maximum backups running at once
+     * @param bytesPerSecond total rate of backup I/O in bytes per second, 0 for unlimited
+     */
+    public BackupScheduler(int maxConcurrentBackups, long bytesPerSecond) {
+        this(maxConcurrentBackups, bytesPerSecond, null);
+    }
+
+    /**
+     * @param maxConcurrentBackups maximum backups running at once
+     * @param bytesPerSecond total rate of backup I/O in bytes per second, 0 for unlimited
+     * @param executor executor for backups or null for the default one
+     */
+    public BackupScheduler(int maxConcurrentBackups, long bytesPerSecond, Executor executor) {
+        if (maxConcurrentBackups < 1)
+            throw new RuntimeException("Invalid value for maxConcurrentBackups:" + maxConcurrentBackups);
+        if (bytesPerSecond < 0)
+            throw new RuntimeException("Invalid value for bytesPerSecond:" + bytesPerSecond);
+
+        this.executor = executor == null ? BackupExecutors.getDefaultExecutor() : executor;
+        this.maxConcurrentBackups = maxConcurrentBackups;
+        this.throttle = bytesPerSecond == 0 ? null : new TokenBucket(bytesPerSecond);
+    }
+
+    private static String getFolderKey(String backupFolderName) {
+        return new File(backupFolderName).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /**
+     * Schedules rolling backup
+     * @param processor backup processor
+     * @return future with backup file name or null if not successful
+     */
+    public synchronized CompletableFuture<String> schedule(BackupProcessor processor) {
+        String folderKey = getFolderKey(processor.getBackupFolderName());
+        FolderQueue folderQueue = folderQueues.computeIfAbsent(folderKey, k -> new FolderQueue());
+
+        if (folderQueue.running == null) {
+            folderQueue.running = new Request(processor);
+            readyFolders.add(folderKey);
+            startReady();
+            return folderQueue.running.future;
+        }
+
+        //a waiting request for the same backup already covers this one, the latest processor is used
+        Request request = folderQueue.pending.get(processor.getBackupFileName());
+        if (request == null) {
+            request = new Request(processor);
+            folderQueue.pending.put(processor.getBackupFileName(), request);
+        } else {
+            request.processor = processor;
+        }
+        return request.future;
+    }
+
+    /**
+     * Submits requests of ready folders while fewer than maximum backups are running
+     */
+    private synchronized void startReady() {
+        while ((runningCount < maxConcurrentBackups) && !readyFolders.isEmpty()) {
+            String folderKey = readyFolders.poll();
+            runningCount++;
+            submit(folderKey, folderQueues.get(folderKey).running);
+        }
+    }
+
+    private void submit(String folderKey, Request request) {
+        try {
+            executor.execute(() -> execute(folderKey, request));
+        } catch (RuntimeException e) {
+            //executor rejected the task
+            request.future.completeExceptionally(e);
+            completed(folderKey);
+        }
+    }
+
+    private void execute(String folderKey, Request request) {
+        try {
+            request.future.complete(IoThrottle.run(throttle, request.processor::createRollingBackup));
+        } catch (RuntimeException e) {
+            request.future.completeExceptionally(e);
+        } catch (Error e) {
+            //the caller gets the error too, the folder queue is released in any case
+            request.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            completed(folderKey);
+        }
+    }
+
+    private synchronized void completed(String folderKey) {
+        runningCount--;
+        FolderQueue folderQueue = folderQueues.get(folderKey);
+        if (folderQueue.pending.isEmpty()) {
+            folderQueues.remove(folderKey);
+        } else {
+            //the folder goes after other ready folders
+            String backupFileName = folderQueue.pending.keySet().iterator().next();
+            folderQueue.running = folderQueue.pending.remove(backupFileName);
+            readyFolders.add(folderKey);
+        }
+        startReady();
+    }
+}
@@ -1,11 +1,29 @@
 package com.romanpulov.jutilscore.storage;
 
+import com.romanpulov.jutilscore.io.CompressionCodec;
+import com.romanpulov.jutilscore.io.CompressionCodecs;
+import com.romanpulov.jutilscore.io.DeflateCodec;
 import com.romanpulov.jutilscore.io.FileUtils;
+import com.romanpulov.jutilscore.io.GenerationIndex;
+import com.romanpulov.jutilscore.io.IoEvent;
+import com.romanpulov.jutilscore.io.IoOperation;
+import com.romanpulov.jutilscore.io.ProgressTracker;
 import com.romanpulov.jutilscore.io.ZipFileUtils;
+import com.romanpulov.jutilscore.io.ZipIndex;
+import com.romanpulov.jutilscore.process.ProcessPipeline;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
 
 /**
  * Backup and restore for file
@@ -30,7 +48,7 @@ public class BackupUtils {
      * Returns backup file name
      * @return file name
      */
-    private static String getFullFileName(String folderName, String fileName) {
+    static String getFullFileName(String folderName, String fileName) {
         return normalizeFolderName(folderName) + fileName;
     }
 
@@ -43,54 +61,208 @@ public class BackupUtils {
 
     /**
      * Created local backup
+     * @param rotate rotate backup copies before the new archive is committed
      * @return archived file name if successful
      */
-    private static String createLocalBackup(String dataFileName, String backupFolderName, String backupFileName) {
+    private static String createLocalBackup(String dataFileName, String backupFolderName, String backupFileName, CompressionCodec codec,
+                                            boolean rotate) {
         String backupFullFileName = getFullFileName(backupFolderName, backupFileName);
 
-        if (backupFullFileName.equals(dataFileName) || !prepareBackupFolder(backupFolderName)) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.BACKUP, dataFileName);
+        operation.setInputFile(dataFileName);
+
+        if (backupFullFileName.equals(dataFileName)) {
+            operation.finish(false);
             return null;
         } else {
-            String zipFileName  = ZipFileUtils.getZipFileName(backupFullFileName);
-            if (FileUtils.copyWithZip(backupFileName, dataFileName, zipFileName)) {
-                return backupFileName;
-            } else {
+            try (InputStream inputStream = new FileInputStream(dataFileName)) {
+                return createLocalBackup(inputStream, backupFolderName, backupFileName, codec, rotate,
+                        new File(dataFileName).lastModified(), operation);
+            } catch (IOException e) {
+                e.printStackTrace();
+                operation.setError(e);
+                operation.finish(false);
                 return null;
             }
         }
    }
 
     /**
-     * Restores backup from archive
+     * Created local backup from stream
+     * @param rotate rotate backup copies before the new archive is committed
+     * @param sourceLastModified modification time of the source for the manifest, 0 if unknown
+     * @param operation backup operation to complete
+     * @return archived file name if successful
+     */
+    private static String createLocalBackup(InputStream inputStream, String backupFolderName, String backupFileName, CompressionCodec codec,
+                                            boolean rotate, long sourceLastModified, IoOperation operation) {
+        if (!prepareBackupFolder(backupFolderName)) {
+            operation.finish(false);
+            return null;
+        } else {
+            String archiveFileName = ZipFileUtils.getArchiveFileName(getFullFileName(backupFolderName, backupFileName), codec.getFileExtension());
+            String tempFileName = FileUtils.getTempFileName(archiveFileName);
+            BackupManifest.ChecksumInputStream sourceStream = new BackupManifest.ChecksumInputStream(inputStream);
+            BackupManifest.ChecksumOutputStream archiveStream = null;
+            try (OutputStream outputStream = ProgressTracker.track(archiveStream = new BackupManifest.ChecksumOutputStream(new FileOutputStream(tempFileName)))) {
+                ProgressTracker.phase(ProgressTracker.Phase.COMPRESS);
+                codec.compress(backupFileName, ProgressTracker.track(sourceStream), outputStream);
+            } catch (IOException e) {
+                e.printStackTrace();
+                FileUtils.delete(tempFileName);
+                operation.setError(e);
+                operation.finish(false);
+                return null;
+            }
+
+            //copies are rotated only when the new archive is written so failed or cancelled backup keeps them as is
+            if (rotate && !rotateBackupFiles(backupFolderName, backupFileName, codec)) {
+                FileUtils.delete(tempFileName);
+                operation.finish(false);
+                return null;
+            }
+
+            //archive is replaced only when completely written
+            try {
+                ProgressTracker.phase(ProgressTracker.Phase.COMMIT);
+            } catch (IOException e) {
+                FileUtils.delete(tempFileName);
+                operation.setError(e);
+                operation.finish(false);
+                return null;
+            }
+            boolean committed = FileUtils.renameTempFile(tempFileName);
+            if (committed)
+                addManifestEntry(archiveFileName, archiveFileName, sourceStream, sourceLastModified, archiveStream);
+            operation.setOutputFile(archiveFileName);
+            operation.finish(committed);
+            return committed ? backupFileName : null;
+        }
+    }
+
+    /**
+     * Records committed archive in the manifest, the backup is kept if the manifest can not be written
+     * @param archiveFileName archive file name the manifest is kept for
+     * @param committedFileName committed archive or generation file name
+     */
+    private static void addManifestEntry(String archiveFileName, String committedFileName,
+                                         BackupManifest.ChecksumInputStream sourceStream, long sourceLastModified,
+                                         BackupManifest.ChecksumOutputStream archiveStream) {
+        addManifestEntry(archiveFileName, committedFileName, sourceStream.getSize(), sourceLastModified, sourceStream.getChecksum(),
+                archiveStream.getChecksum());
+    }
+
+    /**
+     * Records committed file set archive in the manifest
+     * Files are not read again for the source checksum, it is calculated from names, sizes and CRCs of the archive entries.
+     * @param files archived files
+     */
+    private static void addFileSetManifestEntry(String archiveFileName, Map<String, Path> files,
+                                                BackupManifest.ChecksumOutputStream archiveStream) {
+        long sourceSize = 0;
+        long sourceLastModified = 0;
+        for (Path path : files.values()) {
+            File file = path.toFile();
+            sourceSize += file.length();
+            sourceLastModified = Math.max(sourceLastModified, file.lastModified());
+        }
+
+        CRC32C sourceChecksum = new CRC32C();
+        ByteBuffer entryBuffer = ByteBuffer.allocate(2 * Long.BYTES);
+        try (ZipIndex zipIndex = ZipIndex.open(archiveFileName)) {
+            for (ZipIndex.Entry entry : zipIndex.getEntries()) {
+                sourceChecksum.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                entryBuffer.clear();
+                sourceChecksum.update(entryBuffer.putLong(entry.getSize()).putLong(entry.getCrc()).array());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        addManifestEntry(archiveFileName, archiveFileName, sourceSize, sourceLastModified, sourceChecksum.getValue(),
+                archiveStream.getChecksum());
+    }
+
+    private static void addManifestEntry(String archiveFileName, String committedFileName, long sourceSize, long sourceLastModified,
+                                         long sourceChecksum, long archiveChecksum) {
+        File archiveFile = new File(committedFileName);
+        BackupManifest.Entry entry = new BackupManifest.Entry(sourceSize, sourceLastModified, sourceChecksum,
+                archiveFile.length(), archiveFile.lastModified(), archiveChecksum);
+        try {
+            new BackupManifest(archiveFileName).addEntry(entry, FileUtils.getFileKeepCopiesCount() + 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the most recent archive of the backup among supported archive formats
+     * @param backupFullFileName backup file name with folder
+     * @return archive file or null if not found
+     */
+    static File getLatestArchiveFile(String backupFullFileName) {
+        File result = null;
+        for (String extension : CompressionCodecs.getFileExtensions()) {
+            String archiveFileName = ZipFileUtils.getArchiveFileName(backupFullFileName, extension);
+            result = getLatestFile(result, new File(archiveFileName));
+
+            //generation rotation keeps the archive under the latest generation name
+            try {
+                String generationFileName = new GenerationIndex(archiveFileName).getLatestGenerationFileName();
+                if (generationFileName != null)
+                    result = getLatestFile(result, new File(generationFileName));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    private static File getLatestFile(File latestFile, File file) {
+        return file.exists() && ((latestFile == null) || (file.lastModified() > latestFile.lastModified())) ? file : latestFile;
+    }
+
+    /**
+     * Restores backup from archive, archive format is detected automatically
      * @return restored file name if successful
      */
     public static String restoreBackup(String dataFileName, String backupFolderName, String backupFileName) {
         String backupFullFileName = getFullFileName(backupFolderName, backupFileName);
 
-        //check backup availability
-        File zipFile = new File(ZipFileUtils.getZipFileName(backupFullFileName));
-        if (!zipFile.exists())
-            return null;
-
-        //extract backup
-        if (!ZipFileUtils.unZipFile(normalizeFolderName(backupFolderName), ZipFileUtils.getZipFileName(backupFileName)))
-            return null;
+        IoOperation operation = IoOperation.start(IoEvent.Operation.RESTORE, dataFileName);
 
-        //check restored file availability
-        File file = new File(backupFullFileName);
-        if (!file.exists())
+        //check backup availability
+        File archiveFile = getLatestArchiveFile(backupFullFileName);
+        if (archiveFile == null) {
+            operation.finish(false);
             return null;
+        }
+        operation.setInputFile(archiveFile.getPath());
 
-        if (!backupFileName.equals(dataFileName)) {
-            //replace source file
-            if (!FileUtils.copy(backupFullFileName, dataFileName))
+        //extract backup next to the data file
+        String tempFileName = FileUtils.getTempFileName(dataFileName);
+        try {
+            ProgressTracker.phase(ProgressTracker.Phase.DECOMPRESS);
+            if (!FileUtils.copyWithDecompression(archiveFile.getPath(), tempFileName)) {
+                FileUtils.delete(tempFileName);
+                operation.finish(false);
                 return null;
-
-            //delete and ignore any errors
-            file.delete();
+            }
+            ProgressTracker.phase(ProgressTracker.Phase.COMMIT);
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileUtils.delete(tempFileName);
+            operation.setError(e);
+            operation.finish(false);
+            return null;
         }
 
-        return dataFileName;
+        //replace source file
+        boolean committed = FileUtils.renameTempFile(tempFileName);
+        operation.setOutputFile(dataFileName);
+        operation.finish(committed);
+        return committed ? dataFileName : null;
     }
 
     /**
@@ -98,23 +270,319 @@ public class BackupUtils {
      * @return archived file if successful
      */
     public static String createRollingLocalBackup(String dataFileName, String backupFolderName, String backupFileName) {
+        return createRollingLocalBackup(dataFileName, backupFolderName, backupFileName, CompressionCodecs.DEFAULT);
+    }
+
+    /**
+     * Created rolling backup with parallel compression
+     * @param compressionThreadCount compression thread count, 1 or less for single threaded compression
+     * @param compressionBlockSize block size for parallel compression
+     * @return archived file if successful
+     */
+    public static String createRollingLocalBackup(String dataFileName, String backupFolderName, String backupFileName,
+                                                  int compressionThreadCount, int compressionBlockSize) {
+        return createRollingLocalBackup(dataFileName, backupFolderName, backupFileName,
+                new DeflateCodec(Deflater.DEFAULT_COMPRESSION, compressionThreadCount, compressionBlockSize));
+    }
+
+    /**
+     * Created rolling backup with the given compression codec
+     * @param codec compression codec
+     * @return archived file if successful
+     */
+    public static String createRollingLocalBackup(String dataFileName, String backupFolderName, String backupFileName,
+                                                  CompressionCodec codec) {
+        return createLocalBackup(dataFileName, backupFolderName, backupFileName, codec, true);
+    }
+
+    /**
+     * Created rolling backup with the given compression codec and rotation mode
+     * @param codec compression codec
+     * @param rotationMode rotation of backup copies
+     * @return archived file if successful
+     */
+    public static String createRollingLocalBackup(String dataFileName, String backupFolderName, String backupFileName,
+                                                  CompressionCodec codec, RotationMode rotationMode) {
+        return rotationMode == RotationMode.GENERATION ?
+                createGenerationLocalBackup(dataFileName, backupFolderName, backupFileName, codec) :
+                createRollingLocalBackup(dataFileName, backupFolderName, backupFileName, codec);
+    }
+
+    /**
+     * Created rolling backup from stream with the given compression codec
+     * @param inputStream input stream with backup data
+     * @param codec compression codec
+     * @return archived file if successful
+     */
+    public static String createRollingLocalBackup(InputStream inputStream, String backupFolderName, String backupFileName,
+                                                  CompressionCodec codec) {
+        return createLocalBackup(inputStream, backupFolderName, backupFileName, codec, true, 0,
+                IoOperation.start(IoEvent.Operation.BACKUP, backupFileName));
+    }
+
+    /**
+     * Created rolling backup of the output of the process pipeline, streamed without buffering the output
+     * The backup fails and existing copies are kept if any process of the pipeline exits with an error.
+     * @param pipeline process pipeline with backup data as output
+     * @param codec compression codec
+     * @return archived file if successful
+     */
+    public static String createRollingLocalBackup(ProcessPipeline pipeline, String backupFolderName, String backupFileName,
+                                                  CompressionCodec codec) {
+        try {
+            return pipeline.consume(inputStream -> createRollingLocalBackup(inputStream, backupFolderName, backupFileName, codec));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Rotates copies of backup archive
+     * @return true if successful
+     */
+    private static boolean rotateBackupFiles(String backupFolderName, String backupFileName, CompressionCodec codec) {
+        try {
+            ProgressTracker.phase(ProgressTracker.Phase.ROTATE);
+        } catch (IOException e) {
+            return false;
+        }
 
+        //rotate only copies of this backup archive
+        String archiveFileName = ZipFileUtils.getArchiveFileName(backupFileName, codec.getFileExtension());
         List<String> fileNames = getBackupFileNames(backupFolderName);
         List<String> fullFileNames = null;
 
         if (fileNames != null) {
+            fileNames.removeIf(fileName -> !fileName.equals(archiveFileName) &&
+                    !(fileName.startsWith(archiveFileName + ".") && FileUtils.isBackupFileName(fileName)));
+
             fullFileNames = new ArrayList<>();
             for (String fileName : fileNames) {
                 fullFileNames.add(normalizeFolderName(backupFolderName) + fileName);
             }
         }
 
-        return fileNames != null &&
-                !fileNames.isEmpty() &&
-                !FileUtils.renameListCopies(fullFileNames) &&
-                !FileUtils.saveListCopies(fullFileNames) ?
-                null :
-                createLocalBackup(dataFileName, backupFolderName, backupFileName);
+        if (fileNames == null || fileNames.isEmpty())
+            return true;
+
+        IoOperation operation = IoOperation.start(IoEvent.Operation.ROTATE, getFullFileName(backupFolderName, archiveFileName));
+        operation.setFilesRotated(fullFileNames.size());
+        boolean result = FileUtils.renameListCopies(fullFileNames) || FileUtils.saveListCopies(fullFileNames);
+        operation.finish(result);
+        return result;
+    }
+
+    /**
+     * Created rolling backup of the file set as a single zip archive
+     * @param files entry names and files
+     * @param executor executor for entry compression or null for a thread per processor
+     * @return archived file if successful
+     */
+    public static String createRollingLocalFileSetBackup(Map<String, Path> files, String backupFolderName, String backupFileName,
+                                                         Executor executor) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.BACKUP, backupFileName);
+        if (!prepareBackupFolder(backupFolderName)) {
+            operation.finish(false);
+            return null;
+        }
+
+        String archiveFileName = ZipFileUtils.getZipFileName(getFullFileName(backupFolderName, backupFileName));
+        String tempFileName = FileUtils.getTempFileName(archiveFileName);
+        BackupManifest.ChecksumOutputStream archiveStream = null;
+        try (OutputStream outputStream = archiveStream = new BackupManifest.ChecksumOutputStream(new FileOutputStream(tempFileName))) {
+            //deflated entries are kept next to the archive, not in a possibly small system temp folder
+            ZipFileUtils.zipFiles(files, outputStream, Deflater.DEFAULT_COMPRESSION, executor,
+                    new File(archiveFileName).getAbsoluteFile().getParentFile().toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileUtils.delete(tempFileName);
+            operation.setError(e);
+            operation.finish(false);
+            return null;
+        }
+
+        //copies are rotated only when the new archive is written so failed backup keeps them as is
+        if (!rotateBackupFiles(backupFolderName, backupFileName, CompressionCodecs.DEFAULT)) {
+            FileUtils.delete(tempFileName);
+            operation.finish(false);
+            return null;
+        }
+
+        long bytesIn = 0;
+        for (Path path : files.values()) {
+            bytesIn += path.toFile().length();
+        }
+        operation.setBytesIn(bytesIn);
+        boolean committed = FileUtils.renameTempFile(tempFileName);
+        if (committed)
+            addFileSetManifestEntry(archiveFileName, files, archiveStream);
+        operation.setOutputFile(archiveFileName);
+        operation.finish(committed);
+        return committed ? backupFileName : null;
+    }
+
+    /**
+     * Restores file set backup to the data folder
+     * @return data folder name if successful
+     */
+    public static String restoreFileSetBackup(String dataFolderName, String backupFolderName, String backupFileName) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.RESTORE, dataFolderName);
+        File archiveFile = new File(ZipFileUtils.getZipFileName(getFullFileName(backupFolderName, backupFileName)));
+        if (!archiveFile.exists()) {
+            operation.finish(false);
+            return null;
+        }
+        operation.setInputFile(archiveFile.getPath());
+
+        try {
+            List<String> entryNames = ZipFileUtils.unZipAll(archiveFile.getPath(), dataFolderName);
+            long bytesOut = 0;
+            for (String entryName : entryNames) {
+                bytesOut += new File(dataFolderName, entryName).length();
+            }
+            operation.setBytesOut(bytesOut);
+            operation.finish(true);
+            return dataFolderName;
+        } catch (IOException e) {
+            e.printStackTrace();
+            operation.setError(e);
+            operation.finish(false);
+            return null;
+        }
+    }
+
+    private static GenerationIndex getGenerationIndex(String backupFolderName, String backupFileName, CompressionCodec codec) {
+        return new GenerationIndex(ZipFileUtils.getArchiveFileName(getFullFileName(backupFolderName, backupFileName), codec.getFileExtension()));
+    }
+
+    /**
+     * Created backup under the next generation name, the oldest generation over copies count is deleted
+     * @return archived file if successful
+     */
+    private static String createGenerationLocalBackup(String dataFileName, String backupFolderName, String backupFileName, CompressionCodec codec) {
+        IoOperation operation = IoOperation.start(IoEvent.Operation.BACKUP, dataFileName);
+        operation.setInputFile(dataFileName);
+        if (!prepareBackupFolder(backupFolderName)) {
+            operation.finish(false);
+            return null;
+        }
+
+        GenerationIndex generationIndex = getGenerationIndex(backupFolderName, backupFileName, codec);
+        try (InputStream inputStream = new FileInputStream(dataFileName)) {
+            long generation = generationIndex.getNextGeneration();
+            String generationFileName = generationIndex.getGenerationFileName(generation);
+            String tempFileName = FileUtils.getTempFileName(generationFileName);
+            BackupManifest.ChecksumInputStream sourceStream = new BackupManifest.ChecksumInputStream(inputStream);
+            BackupManifest.ChecksumOutputStream archiveStream = null;
+            try (OutputStream outputStream = ProgressTracker.track(archiveStream = new BackupManifest.ChecksumOutputStream(new FileOutputStream(tempFileName)))) {
+                ProgressTracker.phase(ProgressTracker.Phase.COMPRESS);
+                codec.compress(backupFileName, ProgressTracker.track(sourceStream), outputStream);
+                ProgressTracker.phase(ProgressTracker.Phase.COMMIT);
+            } catch (IOException e) {
+                FileUtils.delete(tempFileName);
+                throw e;
+            }
+            FileUtils.commitFile(tempFileName, generationFileName);
+            operation.setOutputFile(generationFileName);
+
+            //same number of copies as rename rotation: archive and its .bakNN copies
+            generationIndex.commitGeneration(generation, FileUtils.getFileKeepCopiesCount() + 1);
+            addManifestEntry(ZipFileUtils.getArchiveFileName(getFullFileName(backupFolderName, backupFileName), codec.getFileExtension()),
+                    generationFileName, sourceStream, new File(dataFileName).lastModified(), archiveStream);
+            operation.finish(true);
+            return backupFileName;
+        } catch (IOException e) {
+            e.printStackTrace();
+            operation.setError(e);
+            operation.finish(false);
+            return null;
+        }
+    }
+
+    /**
+     * Returns backup file names from generation index
+     * @param codec compression codec of the backup
+     * @return file names, newest first, or null in case of errors
+     */
+    public static List<String> getGenerationBackupFileNames(String backupFolderName, String backupFileName, CompressionCodec codec) {
+        try {
+            List<String> fileNames = getGenerationIndex(backupFolderName, backupFileName, codec).getGenerationFileNames();
+            List<String> result = new ArrayList<>(fileNames.size());
+            for (String fileName : fileNames) {
+                result.add(new File(fileName).getName());
+            }
+            return result;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Returns retained copies of the archive, newest first
+     * @param archiveFileName full archive file name
+     * @return full file names of generations or of the archive and its .bakNN copies
+     */
+    private static List<String> getArchiveCopyFileNames(String archiveFileName) throws IOException {
+        List<String> result = new GenerationIndex(archiveFileName).getGenerationFileNames();
+        if (result.isEmpty()) {
+            if (new File(archiveFileName).exists())
+                result.add(archiveFileName);
+            for (int copyNum = 1; copyNum <= FileUtils.getFileKeepCopiesCount(); copyNum++) {
+                String copyFileName = FileUtils.getCopyFileName(archiveFileName, copyNum);
+                if (new File(copyFileName).exists())
+                    result.add(copyFileName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Verifies retained copies of the backup against the manifest, checksums are calculated in parallel
+     * Archive formats without a manifest are skipped.
+     * @param executor executor for checksum calculation or null for the default one with virtual threads where available
+     * @return verification results, newest first for each archive format, or null in case of errors reading manifests
+     */
+    public static List<BackupVerification> verifyBackups(String backupFolderName, String backupFileName, Executor executor) {
+        Executor verifyExecutor = executor == null ? BackupExecutors.getDefaultExecutor() : executor;
+        List<CompletableFuture<BackupVerification>> futures = new ArrayList<>();
+
+        for (String extension : CompressionCodecs.getFileExtensions()) {
+            String archiveFileName = ZipFileUtils.getArchiveFileName(getFullFileName(backupFolderName, backupFileName), extension);
+            BackupManifest manifest = new BackupManifest(archiveFileName);
+            if (!new File(manifest.getManifestFileName()).exists())
+                continue;
+
+            try {
+                List<BackupManifest.Entry> entries = manifest.getEntries();
+                List<String> fileNames = getArchiveCopyFileNames(archiveFileName);
+                for (int i = 0; i < fileNames.size(); i++) {
+                    File file = new File(fileNames.get(i));
+                    int position = i;
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return new BackupVerification(file.getName(), BackupManifest.verify(file, entries, position));
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            return new BackupVerification(file.getName(), BackupVerification.Status.ERROR);
+                        }
+                    }, verifyExecutor));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        List<BackupVerification> result = new ArrayList<>(futures.size());
+        for (CompletableFuture<BackupVerification> future : futures) {
+            result.add(future.join());
+        }
+        return result;
     }
 
     public static class BackupFileFilter implements FileFilter {
@@ -131,8 +599,14 @@ public class BackupUtils {
      */
     public static boolean isBackupFileName(String fileName) {
         String lowerFileName = fileName.toLowerCase();
-        return lowerFileName.endsWith(ZipFileUtils.ZIP_EXT) ||
-                lowerFileName.matches("\\S*" +ZipFileUtils.ZIP_EXT + "." + FileUtils.BAK_EXT + "" + "[0-9]{2}");
+        for (String extension : CompressionCodecs.getFileExtensions()) {
+            if (lowerFileName.endsWith(extension) ||
+                    lowerFileName.matches("\\S*" + Pattern.quote(extension) + "\\." + FileUtils.BAK_EXT + "[0-9]{2}") ||
+                    lowerFileName.matches("\\S*" + Pattern.quote(extension) + "\\." + DeltaBackupUtils.DELTA_EXT + "[0-9]{2}") ||
+                    lowerFileName.matches("\\S*" + Pattern.quote(extension) + "\\." + GenerationIndex.GEN_EXT + "[0-9]{6,}"))
+                return true;
+        }
+        return false;
     }
 
     /**
@@ -0,0 +1,34 @@
+package com.romanpulov.jutilscore.storage;
+
+/**
+ * Result of backup copy verification
+ * @param fileName archive copy file name
+ * @param status verification status
+ */
+public record BackupVerification(String fileName, Status status) {
+    public enum Status {
+        /**
+         * Copy matches its manifest entry
+         */
+        VALID,
+
+        /**
+         * Copy does not match any manifest entry
+         */
+        CORRUPTED,
+
+        /**
+         * Copy was created before the manifest
+         */
+        UNVERIFIED,
+
+        /**
+         * Copy could not be read
+         */
+        ERROR
+    }
+
+    public boolean isValid() {
+        return status == Status.VALID;
+    }
+}
@@ -0,0 +1,248 @@
+package com.romanpulov.jutilscore.storage;
+
+import com.romanpulov.jutilscore.io.FileUtils;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content addressed store of compressed chunks
+ * Streams are split into content defined chunks with a gear rolling hash, so inserted or removed
+ * bytes only change the chunks around them. Chunks are named by SHA-256 of their content
+ * and stored once in a two level folder structure.
+ */
+
+public class ChunkStore {
+    public static final String CHUNKS_FOLDER_NAME = "chunks";
+
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+    //16 bits give 64 KB average chunk size after minimum
+    private static final long CHUNK_MASK = 0xFFFF000000000000L;
+    private static final long[] GEAR = createGear();
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    private static final Map<String, Lock> mFolderLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Chunk reference: content hash and uncompressed length
+     */
+    public static class Chunk {
+        private final String hash;
+        private final int length;
+
+        public Chunk(String hash, int length) {
+            this.hash = hash;
+            this.length = length;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private final File mChunksFolder;
+    private final int mLevel;
+    private final Lock mLock;
+
+    public ChunkStore(String folderName) {
+        this(folderName, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param folderName store folder, chunks are kept in its chunks subfolder
+     * @param level deflate level for chunks
+     */
+    public ChunkStore(String folderName, int level) {
+        mChunksFolder = new File(BackupUtils.normalizeFolderName(folderName) + CHUNKS_FOLDER_NAME);
+        mLevel = level;
+        mLock = mFolderLocks.computeIfAbsent(mChunksFolder.getAbsoluteFile().toPath().normalize().toString(),
+                key -> new ReentrantLock());
+    }
+
+    /**
+     * Returns lock of the store folder, shared by all stores of the folder in this process
+     * Writers hold it until their chunks are referenced, so a chunk found in the store is not deleted meanwhile.
+     * @return lock
+     */
+    public Lock getLock() {
+        return mLock;
+    }
+
+    private static long[] createGear() {
+        //fixed splitmix64 sequence, chunk boundaries must not change between versions
+        long[] gear = new long[256];
+        long seed = 0x6A09E667F3BCC908L;
+        for (int i = 0; i < gear.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            gear[i] = z ^ (z >>> 31);
+        }
+        return gear;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private File getChunkFile(String hash) {
+        return new File(new File(mChunksFolder, hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * Checks if chunk is stored
+     * @param hash chunk hash
+     * @return true if exists
+     */
+    public boolean contains(String hash) {
+        return getChunkFile(hash).exists();
+    }
+
+    /**
+     * Splits stream into chunks and stores the chunks which are not in the store yet
+     * @param inputStream input stream
+     * @return chunks of the stream in order
+     * @throws IOException in case of errors with streams or files
+     */
+    public List<Chunk> putStream(InputStream inputStream) throws IOException {
+        List<Chunk> result = new ArrayList<>();
+        MessageDigest digest = createDigest();
+        Deflater deflater = new Deflater(mLevel);
+
+        try {
+            byte[] buffer = new byte[MAX_CHUNK_SIZE * 2];
+            int bufferLength = 0;
+            boolean endOfStream = false;
+
+            while (true) {
+                //keep at least max chunk size in the buffer
+                while (!endOfStream && (bufferLength < MAX_CHUNK_SIZE)) {
+                    int len = inputStream.read(buffer, bufferLength, buffer.length - bufferLength);
+                    if (len < 0)
+                        endOfStream = true;
+                    else
+                        bufferLength += len;
+                }
+
+                if (bufferLength == 0)
+                    break;
+
+                int chunkLength = findChunkLength(buffer, bufferLength);
+                digest.update(buffer, 0, chunkLength);
+                String hash = HEX_FORMAT.formatHex(digest.digest());
+
+                if (!contains(hash)) {
+                    writeChunk(hash, buffer, chunkLength, deflater);
+                }
+                result.add(new Chunk(hash, chunkLength));
+
+                System.arraycopy(buffer, chunkLength, buffer, 0, bufferLength - chunkLength);
+                bufferLength -= chunkLength;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return result;
+    }
+
+    private static int findChunkLength(byte[] buffer, int length) {
+        if (length <= MIN_CHUNK_SIZE)
+            return length;
+
+        int limit = Math.min(length, MAX_CHUNK_SIZE);
+        long hash = 0;
+        for (int i = MIN_CHUNK_SIZE; i < limit; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+            if ((hash & CHUNK_MASK) == 0)
+                return i + 1;
+        }
+        return limit;
+    }
+
+    private void writeChunk(String hash, byte[] buffer, int length, Deflater deflater) throws IOException {
+        File chunkFile = getChunkFile(hash);
+        File chunkFolder = chunkFile.getParentFile();
+        if (!chunkFolder.exists() && !chunkFolder.mkdirs() && !chunkFolder.exists())
+            throw new IOException("Error creating chunk folder " + chunkFolder.getPath());
+
+        String tempFileName = FileUtils.getTempFileName(chunkFile.getPath());
+        deflater.reset();
+        try (OutputStream outputStream = new FileOutputStream(tempFileName)) {
+            DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(outputStream, deflater, 64 * 1024);
+            deflaterOutputStream.write(buffer, 0, length);
+            deflaterOutputStream.finish();
+        }
+
+        if (!FileUtils.renameTempFile(tempFileName))
+            throw new IOException("Error writing chunk " + hash);
+    }
+
+    /**
+     * Opens stream with uncompressed chunk content
+     * @param hash chunk hash
+     * @return input stream
+     * @throws IOException in case of missing chunk or errors opening the file
+     */
+    public InputStream openChunk(String hash) throws IOException {
+        return new InflaterInputStream(new FileInputStream(getChunkFile(hash)));
+    }
+
+    /**
+     * Writes chunks content to the output stream verifying chunk hashes
+     * @param chunks chunks
+     * @param outputStream output stream
+     * @throws IOException in case of missing or corrupted chunks
+     */
+    public void readChunks(List<Chunk> chunks, OutputStream outputStream) throws IOException {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[MAX_CHUNK_SIZE];
+
+        for (Chunk chunk : chunks) {
+            try (InputStream inputStream = openChunk(chunk.getHash())) {
+                int length = 0;
+                int len;
+                while ((length < buffer.length) && ((len = inputStream.read(buffer, length, buffer.length - length)) > 0)) {
+                    length += len;
+                }
+
+                digest.update(buffer, 0, length);
+                if ((length != chunk.getLength()) || !HEX_FORMAT.formatHex(digest.digest()).equals(chunk.getHash()))
+                    throw new IOException("Corrupted chunk " + chunk.getHash());
+
+                outputStream.write(buffer, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Deletes chunk from the store
+     * @param hash chunk hash
+     * @return true if deleted
+     */
+    public boolean deleteChunk(String hash) {
+        return FileUtils.delete(getChunkFile(hash).getPath());
+    }
+}
@@ -0,0 +1,254 @@
+package com.romanpulov.jutilscore.storage;
+
+import com.romanpulov.jutilscore.io.FileUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deduplicating backup processor based on ChunkStore
+ * Each backup generation is a small manifest listing the chunks of the data file,
+ * only chunks which are not stored yet are written. Retained generation count follows
+ * FileUtils copies count, chunks no longer referenced are removed with the oldest manifests.
+ */
+
+public class ChunkStoreBackupProcessor implements BackupProcessor {
+    public static final String MANIFEST_EXT = ".manifest";
+    private static final String MANIFEST_FILE_FORMAT = "%s.%06d" + MANIFEST_EXT;
+    private static final Pattern ANY_MANIFEST_PATTERN = Pattern.compile(".+\\.\\d{6}" + Pattern.quote(MANIFEST_EXT));
+
+    private static final int MANIFEST_MAGIC = 0x4A434D46;
+    private static final int FORMAT_VERSION = 1;
+
+    private final String dataFileName;
+    private final String backupFolderName;
+    private final String backupFileName;
+    private final ChunkStore chunkStore;
+    private final Pattern manifestPattern;
+
+    public ChunkStoreBackupProcessor(String dataFileName, String backupFolderName, String backupFileName) {
+        this.dataFileName = dataFileName;
+        this.backupFolderName = backupFolderName;
+        this.backupFileName = backupFileName;
+        this.chunkStore = new ChunkStore(backupFolderName);
+        this.manifestPattern = Pattern.compile(Pattern.quote(backupFileName) + "\\.(\\d{6})" + Pattern.quote(MANIFEST_EXT));
+    }
+
+    @Override
+    public String getDataFileName() {
+        return dataFileName;
+    }
+
+    @Override
+    public String getBackupFolderName() {
+        return backupFolderName;
+    }
+
+    @Override
+    public String getBackupFileName() {
+        return backupFileName;
+    }
+
+    public ChunkStore getChunkStore() {
+        return chunkStore;
+    }
+
+    private String getManifestFileName(int generation) {
+        return String.format(Locale.getDefault(), MANIFEST_FILE_FORMAT, backupFileName, generation);
+    }
+
+    private String getFullFileName(String fileName) {
+        return BackupUtils.getFullFileName(backupFolderName, fileName);
+    }
+
+    /**
+     * Returns backup generations, newest first
+     * @return generation list
+     */
+    private List<Integer> getGenerations() {
+        List<Integer> result = new ArrayList<>();
+        String[] fileNames = new File(backupFolderName).list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                Matcher matcher = manifestPattern.matcher(fileName);
+                if (matcher.matches()) {
+                    result.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    private void writeManifest(String manifestFileName, List<ChunkStore.Chunk> chunks) throws IOException {
+        String tempFileName = FileUtils.getTempFileName(getFullFileName(manifestFileName));
+
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFileName)))) {
+            outputStream.writeInt(MANIFEST_MAGIC);
+            outputStream.writeInt(FORMAT_VERSION);
+            outputStream.writeInt(chunks.size());
+            for (ChunkStore.Chunk chunk : chunks) {
+                outputStream.writeUTF(chunk.getHash());
+                outputStream.writeInt(chunk.getLength());
+            }
+        }
+
+        if (!FileUtils.renameTempFile(tempFileName))
+            throw new IOException("Error writing manifest " + manifestFileName);
+    }
+
+    private List<ChunkStore.Chunk> readManifest(String manifestFileName) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(getFullFileName(manifestFileName))))) {
+            if ((inputStream.readInt() != MANIFEST_MAGIC) || (inputStream.readInt() != FORMAT_VERSION))
+                throw new IOException("Invalid manifest " + manifestFileName);
+
+            int count = inputStream.readInt();
+            List<ChunkStore.Chunk> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(new ChunkStore.Chunk(inputStream.readUTF(), inputStream.readInt()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Removes generations over retained count and chunks referenced by them only
+     * The chunk store is shared by all backups in the folder, so chunks referenced by manifests of any backup are kept.
+     * Called with the chunk store lock held.
+     * @param generations generations, newest first
+     * @throws IOException in case of errors reading manifests, no manifests or chunks are deleted then
+     */
+    private void pruneGenerations(List<Integer> generations) throws IOException {
+        int keepCount = FileUtils.getFileKeepCopiesCount() + 1;
+        if (generations.size() <= keepCount)
+            return;
+
+        Set<String> prunedFileNames = new HashSet<>();
+        Set<String> candidates = new HashSet<>();
+        for (int generation : generations.subList(keepCount, generations.size())) {
+            String manifestFileName = getManifestFileName(generation);
+            prunedFileNames.add(manifestFileName);
+            for (ChunkStore.Chunk chunk : readManifest(manifestFileName)) {
+                candidates.add(chunk.getHash());
+            }
+        }
+
+        //live chunks of all backups sharing the store, including retained generations of this one
+        String[] fileNames = new File(backupFolderName).list();
+        if (fileNames == null)
+            throw new IOException("Error listing backup folder " + backupFolderName);
+        for (String fileName : fileNames) {
+            if (ANY_MANIFEST_PATTERN.matcher(fileName).matches() && !prunedFileNames.contains(fileName)) {
+                for (ChunkStore.Chunk chunk : readManifest(fileName)) {
+                    candidates.remove(chunk.getHash());
+                }
+            }
+        }
+
+        //manifests are deleted only when live chunks are known, otherwise the next backup prunes them again
+        for (String manifestFileName : prunedFileNames) {
+            FileUtils.delete(getFullFileName(manifestFileName));
+        }
+        for (String hash : candidates) {
+            chunkStore.deleteChunk(hash);
+        }
+    }
+
+    @Override
+    public List<String> getBackupFileNames() {
+        List<String> result = new ArrayList<>();
+        for (int generation : getGenerations()) {
+            result.add(getManifestFileName(generation));
+        }
+        return result;
+    }
+
+    @Override
+    public String createRollingBackup() {
+        File backupFolder = new File(backupFolderName);
+        if (!backupFolder.exists() && !backupFolder.mkdirs())
+            return null;
+
+        //chunks found in the store are not pruned by another backup until the manifest refers to them
+        chunkStore.getLock().lock();
+        try {
+            //chunks first, manifest only refers to stored chunks
+            List<ChunkStore.Chunk> chunks;
+            try (InputStream inputStream = new FileInputStream(dataFileName)) {
+                chunks = chunkStore.putStream(inputStream);
+            }
+
+            List<Integer> generations = getGenerations();
+            int generation = generations.isEmpty() ? 1 : generations.get(0) + 1;
+            writeManifest(getManifestFileName(generation), chunks);
+            generations.add(0, generation);
+
+            pruneGenerations(generations);
+
+            return backupFileName;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            chunkStore.getLock().unlock();
+        }
+    }
+
+    @Override
+    public String restoreBackup() {
+        List<Integer> generations = getGenerations();
+        if (generations.isEmpty())
+            return null;
+
+        String tempFileName = FileUtils.getTempFileName(dataFileName);
+        try {
+            List<ChunkStore.Chunk> chunks = readManifest(getManifestFileName(generations.get(0)));
+            try (OutputStream outputStream = new FileOutputStream(tempFileName)) {
+                chunkStore.readChunks(chunks, outputStream);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileUtils.delete(tempFileName);
+            return null;
+        }
+
+        return FileUtils.renameTempFile(tempFileName) ? dataFileName : null;
+    }
+
+    /**
+     * Creates stream with data of the backup generation
+     * @param backupFileName manifest file name from getBackupFileNames
+     * @return input stream with data file content
+     * @throws IOException in case of errors reading the manifest
+     */
+    @Override
+    public InputStream createBackupInputStream(String backupFileName) throws IOException {
+        Iterator<ChunkStore.Chunk> chunks = readManifest(backupFileName).iterator();
+
+        //chunks are opened one by one while reading
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return chunkStore.openChunk(chunks.next().getHash());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,494 @@
+package com.romanpulov.jutilscore.storage;
+
+import com.romanpulov.jutilscore.io.CompressionCodec;
+import com.romanpulov.jutilscore.io.FileUtils;
+import com.romanpulov.jutilscore.io.IoEvent;
+import com.romanpulov.jutilscore.io.IoOperation;
+import com.romanpulov.jutilscore.io.ProgressTracker;
+import com.romanpulov.jutilscore.io.ZipFileUtils;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Delta backups: a full rolling backup archive followed by archives with changed blocks only
+ * Block hashes of the last backed up state are kept in the index file next to the archive,
+ * deltas are applied in order on restore
+ */
+
+public class DeltaBackupUtils {
+    public static final String DELTA_EXT = "delta";
+    public static final String INDEX_EXT = ".index";
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_DELTA_COUNT = 10;
+    private static final int MAX_DELTA_COUNT = 99;
+    private static final String DELTA_FILE_FORMAT = "%s." + DELTA_EXT + "%02d";
+
+    private static final int DELTA_MAGIC = 0x4A444C54;
+    private static final int INDEX_MAGIC = 0x4A424958;
+    private static final int FORMAT_VERSION = 1;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Block hashes of the backed up state and the full archive they are based on
+     */
+    private static class BlockIndex {
+        String archiveName;
+        long archiveLength;
+        long archiveLastModified;
+        int blockSize;
+        long fileLength;
+        int deltaCount;
+        List<byte[]> hashes;
+
+        boolean isIndexOf(File archiveFile, int blockSize) {
+            return archiveFile.exists() &&
+                    archiveFile.getName().equals(archiveName) &&
+                    (archiveFile.length() == archiveLength) &&
+                    (archiveFile.lastModified() == archiveLastModified) &&
+                    (this.blockSize == blockSize);
+        }
+
+        static BlockIndex read(String indexFileName) {
+            if (!new File(indexFileName).exists())
+                return null;
+
+            try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFileName)))) {
+                if ((inputStream.readInt() != INDEX_MAGIC) || (inputStream.readInt() != FORMAT_VERSION))
+                    return null;
+
+                BlockIndex index = new BlockIndex();
+                index.archiveName = inputStream.readUTF();
+                index.archiveLength = inputStream.readLong();
+                index.archiveLastModified = inputStream.readLong();
+                index.blockSize = inputStream.readInt();
+                index.fileLength = inputStream.readLong();
+                index.deltaCount = inputStream.readInt();
+
+                int hashCount = inputStream.readInt();
+                int hashLength = inputStream.readInt();
+                index.hashes = new ArrayList<>(hashCount);
+                for (int i = 0; i < hashCount; i++) {
+                    byte[] hash = new byte[hashLength];
+                    inputStream.readFully(hash);
+                    index.hashes.add(hash);
+                }
+
+                return index;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        void write(String indexFileName) throws IOException {
+            String tempFileName = FileUtils.getTempFileName(indexFileName);
+
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFileName)))) {
+                outputStream.writeInt(INDEX_MAGIC);
+                outputStream.writeInt(FORMAT_VERSION);
+                outputStream.writeUTF(archiveName);
+                outputStream.writeLong(archiveLength);
+                outputStream.writeLong(archiveLastModified);
+                outputStream.writeInt(blockSize);
+                outputStream.writeLong(fileLength);
+                outputStream.writeInt(deltaCount);
+
+                outputStream.writeInt(hashes.size());
+                outputStream.writeInt(hashes.isEmpty() ? 0 : hashes.get(0).length);
+                for (byte[] hash : hashes) {
+                    outputStream.write(hash);
+                }
+            }
+
+            if (!FileUtils.renameTempFile(tempFileName))
+                throw new IOException("Error writing index file " + indexFileName);
+        }
+    }
+
+    /**
+     * Hashes the stream passing through in blocks
+     */
+    private static class BlockHashInputStream extends FilterInputStream {
+        private final MessageDigest mDigest;
+        private final int mBlockSize;
+        private final List<byte[]> mHashes = new ArrayList<>();
+        private int mBlockFill;
+        private long mLength;
+
+        BlockHashInputStream(InputStream in, int blockSize) {
+            super(in);
+            mDigest = createDigest();
+            mBlockSize = blockSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                update(b, off, result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) {
+            //all bytes should be hashed
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void update(byte[] b, int off, int len) {
+            mLength += len;
+            while (len > 0) {
+                int count = Math.min(len, mBlockSize - mBlockFill);
+                mDigest.update(b, off, count);
+                mBlockFill += count;
+                off += count;
+                len -= count;
+                if (mBlockFill == mBlockSize) {
+                    mHashes.add(mDigest.digest());
+                    mBlockFill = 0;
+                }
+            }
+        }
+
+        List<byte[]> getHashes() {
+            if (mBlockFill > 0) {
+                mHashes.add(mDigest.digest());
+                mBlockFill = 0;
+            }
+            return mHashes;
+        }
+
+        long getLength() {
+            return mLength;
+        }
+    }
+
+    /**
+     * Delta records of the source read on demand, so the delta is compressed as it is produced
+     * Blocks are compared with the index hashes, only changed and appended blocks are written.
+     */
+    private static class DeltaInputStream extends InputStream {
+        private final InputStream mSource;
+        private final List<byte[]> mIndexHashes;
+        private final MessageDigest mDigest = createDigest();
+        private final List<byte[]> mHashes = new ArrayList<>();
+        private final byte[] mBlock;
+        private final byte[] mRecord;
+        private final byte[] mSingleByte = new byte[1];
+        private int mRecordPosition;
+        private int mRecordLength;
+        private int mBlockIndex;
+        private long mLength;
+        private boolean mChanged;
+        private boolean mFinished;
+
+        DeltaInputStream(InputStream source, BlockIndex index) {
+            mSource = source;
+            mIndexHashes = index.hashes;
+            mBlock = new byte[index.blockSize];
+            mRecord = new byte[index.blockSize + 12];
+            putInt(DELTA_MAGIC);
+            putInt(FORMAT_VERSION);
+            putInt(index.blockSize);
+        }
+
+        private void putInt(int value) {
+            mRecord[mRecordLength++] = (byte) (value >>> 24);
+            mRecord[mRecordLength++] = (byte) (value >>> 16);
+            mRecord[mRecordLength++] = (byte) (value >>> 8);
+            mRecord[mRecordLength++] = (byte) value;
+        }
+
+        /**
+         * Reads source blocks up to the next changed block
+         * @return false at the end of the delta
+         */
+        private boolean nextRecord() throws IOException {
+            mRecordPosition = 0;
+            mRecordLength = 0;
+            while (!mFinished) {
+                int len = readBlock(mSource, mBlock);
+                if (len == 0) {
+                    putInt(-1);
+                    putInt((int) (mLength >>> 32));
+                    putInt((int) mLength);
+                    mFinished = true;
+                    return true;
+                }
+
+                mDigest.update(mBlock, 0, len);
+                byte[] hash = mDigest.digest();
+                mHashes.add(hash);
+                int blockIndex = mBlockIndex++;
+                mLength += len;
+
+                //changed or appended block
+                if ((blockIndex >= mIndexHashes.size()) || !Arrays.equals(hash, mIndexHashes.get(blockIndex))) {
+                    putInt(blockIndex);
+                    putInt(len);
+                    System.arraycopy(mBlock, 0, mRecord, mRecordLength, len);
+                    mRecordLength += len;
+                    mChanged = true;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(mSingleByte, 0, 1) == -1 ? -1 : mSingleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            while (mRecordPosition == mRecordLength) {
+                if (!nextRecord())
+                    return -1;
+            }
+            int count = Math.min(len, mRecordLength - mRecordPosition);
+            System.arraycopy(mRecord, mRecordPosition, b, off, count);
+            mRecordPosition += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mSource.close();
+        }
+
+        List<byte[]> getHashes() {
+            return mHashes;
+        }
+
+        long getLength() {
+            return mLength;
+        }
+
+        boolean isChanged() {
+            return mChanged;
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String getDeltaFileName(String archiveFileName, int deltaNum) {
+        return String.format(Locale.getDefault(), DELTA_FILE_FORMAT, archiveFileName, deltaNum);
+    }
+
+    public static String getIndexFileName(String archiveFileName) {
+        return archiveFileName + INDEX_EXT;
+    }
+
+    /**
+     * Creates delta backup, falls back to full rolling backup when there is no valid index for the archive
+     * or max delta count is reached
+     * @param codec compression codec
+     * @param blockSize block size for change detection
+     * @param maxDeltaCount max number of deltas before the next full backup
+     * @return archived file name if successful
+     */
+    public static String createDeltaBackup(String dataFileName, String backupFolderName, String backupFileName,
+                                           CompressionCodec codec, int blockSize, int maxDeltaCount) {
+        String backupFullFileName = BackupUtils.getFullFileName(backupFolderName, backupFileName);
+        if (backupFullFileName.equals(dataFileName))
+            return null;
+
+        String archiveFileName = ZipFileUtils.getArchiveFileName(backupFullFileName, codec.getFileExtension());
+        BlockIndex index = BlockIndex.read(getIndexFileName(archiveFileName));
+
+        try {
+            if ((index == null) ||
+                    !index.isIndexOf(new File(archiveFileName), blockSize) ||
+                    (index.deltaCount >= Math.min(maxDeltaCount, MAX_DELTA_COUNT))) {
+                return createFullBackup(dataFileName, backupFolderName, backupFileName, archiveFileName, codec, blockSize);
+            } else {
+                return createDelta(dataFileName, backupFileName, archiveFileName, codec, index);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static String createFullBackup(String dataFileName, String backupFolderName, String backupFileName,
+                                           String archiveFileName, CompressionCodec codec, int blockSize) throws IOException {
+        //hash the same bytes which are archived
+        BlockHashInputStream inputStream = new BlockHashInputStream(new FileInputStream(dataFileName), blockSize);
+        try (inputStream) {
+            if (BackupUtils.createRollingLocalBackup(inputStream, backupFolderName, backupFileName, codec) == null)
+                return null;
+        }
+
+        //deltas of the previous archive are no longer valid
+        deleteDeltaFiles(archiveFileName);
+
+        File archiveFile = new File(archiveFileName);
+        BlockIndex index = new BlockIndex();
+        index.archiveName = archiveFile.getName();
+        index.archiveLength = archiveFile.length();
+        index.archiveLastModified = archiveFile.lastModified();
+        index.blockSize = blockSize;
+        index.fileLength = inputStream.getLength();
+        index.deltaCount = 0;
+        index.hashes = inputStream.getHashes();
+        index.write(getIndexFileName(archiveFileName));
+
+        return backupFileName;
+    }
+
+    private static String createDelta(String dataFileName, String backupFileName, String archiveFileName,
+                                      CompressionCodec codec, BlockIndex index) throws IOException {
+        String deltaFileName = getDeltaFileName(archiveFileName, index.deltaCount + 1);
+        String tempFileName = FileUtils.getTempFileName(deltaFileName);
+
+        IoOperation operation = IoOperation.start(IoEvent.Operation.COMPRESS, dataFileName);
+        operation.setInputFile(dataFileName);
+        operation.setOutputFile(deltaFileName);
+
+        DeltaInputStream deltaStream;
+        try {
+            //delta records are compressed as they are produced from the tracked source
+            deltaStream = new DeltaInputStream(ProgressTracker.track(new FileInputStream(dataFileName)), index);
+            try (deltaStream; OutputStream outputStream = ProgressTracker.track(new FileOutputStream(tempFileName))) {
+                ProgressTracker.phase(ProgressTracker.Phase.COMPRESS);
+                codec.compress(new File(deltaFileName).getName(), deltaStream, outputStream);
+            }
+
+            if (!deltaStream.isChanged() && (deltaStream.getLength() == index.fileLength)) {
+                operation.finish(true);
+                return backupFileName;
+            }
+
+            ProgressTracker.phase(ProgressTracker.Phase.COMMIT);
+            FileUtils.commitFile(tempFileName, deltaFileName);
+        } catch (IOException e) {
+            operation.setError(e);
+            operation.finish(false);
+            throw e;
+        } finally {
+            FileUtils.delete(tempFileName);
+        }
+        operation.finish(true);
+
+        index.deltaCount++;
+        index.fileLength = deltaStream.getLength();
+        index.hashes = deltaStream.getHashes();
+        index.write(getIndexFileName(archiveFileName));
+
+        return backupFileName;
+    }
+
+    private static void deleteDeltaFiles(String archiveFileName) {
+        for (int deltaNum = 1; deltaNum <= MAX_DELTA_COUNT; deltaNum++) {
+            FileUtils.delete(getDeltaFileName(archiveFileName, deltaNum));
+        }
+    }
+
+    private static int readBlock(InputStream inputStream, byte[] block) throws IOException {
+        int length = 0;
+        int len;
+        while ((length < block.length) && ((len = inputStream.read(block, length, block.length - length)) > 0)) {
+            length += len;
+        }
+        return length;
+    }
+
+    /**
+     * Restores backup from the full archive and applies deltas if they belong to this archive
+     * @return restored file name if successful
+     */
+    public static String restoreBackup(String dataFileName, String backupFolderName, String backupFileName) {
+        String backupFullFileName = BackupUtils.getFullFileName(backupFolderName, backupFileName);
+        File archiveFile = BackupUtils.getLatestArchiveFile(backupFullFileName);
+
+        //read index before restore, no deltas to apply if it does not match the archive
+        BlockIndex index = archiveFile == null ? null : BlockIndex.read(getIndexFileName(archiveFile.getPath()));
+        boolean hasDeltas = (index != null) && index.isIndexOf(archiveFile, index.blockSize) && (index.deltaCount > 0);
+
+        if (!hasDeltas)
+            return BackupUtils.restoreBackup(dataFileName, backupFolderName, backupFileName);
+
+        //deltas are applied to a temp file, the data file is replaced only when all deltas are applied
+        String tempFileName = FileUtils.getTempFileName(dataFileName);
+        try {
+            if (BackupUtils.restoreBackup(tempFileName, backupFolderName, backupFileName) == null)
+                return null;
+
+            for (int deltaNum = 1; deltaNum <= index.deltaCount; deltaNum++) {
+                if (!applyDelta(tempFileName, getDeltaFileName(archiveFile.getPath(), deltaNum), index.blockSize))
+                    return null;
+            }
+
+            FileUtils.commitFile(tempFileName, dataFileName);
+            return dataFileName;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            FileUtils.delete(tempFileName);
+        }
+    }
+
+    private static boolean applyDelta(String dataFileName, String deltaFileName, int blockSize) {
+        String tempFileName = FileUtils.getTempFileName(deltaFileName);
+
+        try {
+            if (!FileUtils.copyWithDecompression(deltaFileName, tempFileName))
+                return false;
+
+            try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(tempFileName)));
+                 RandomAccessFile dataFile = new RandomAccessFile(dataFileName, "rw")) {
+                if ((inputStream.readInt() != DELTA_MAGIC) ||
+                        (inputStream.readInt() != FORMAT_VERSION) ||
+                        (inputStream.readInt() != blockSize))
+                    throw new IOException("Invalid delta file " + deltaFileName);
+
+                byte[] block = new byte[blockSize];
+                int blockIndex;
+                while ((blockIndex = inputStream.readInt()) >= 0) {
+                    int len = inputStream.readInt();
+                    if (len > blockSize)
+                        throw new IOException("Invalid block length in delta file " + deltaFileName);
+                    inputStream.readFully(block, 0, len);
+                    dataFile.seek((long) blockIndex * blockSize);
+                    dataFile.write(block, 0, len);
+                }
+                dataFile.setLength(inputStream.readLong());
+            }
+
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            FileUtils.delete(tempFileName);
+        }
+    }
+}
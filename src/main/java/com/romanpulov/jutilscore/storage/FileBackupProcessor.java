@@ -1,14 +1,26 @@
 package com.romanpulov.jutilscore.storage;
 
+import com.romanpulov.jutilscore.io.CompressionCodec;
+import com.romanpulov.jutilscore.io.DeflateCodec;
+import com.romanpulov.jutilscore.io.ZipFileUtils;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.zip.Deflater;
 
-public class FileBackupProcessor implements BackupProcessor {
+public class FileBackupProcessor implements AsyncBackupProcessor {
     private final String dataFileName;
     private final String backupFolderName;
     private final String backupFileName;
+    private int compressionThreadCount = 1;
+    private int compressionBlockSize = ZipFileUtils.DEFAULT_PARALLEL_BLOCK_SIZE;
+    private CompressionCodec compressionCodec;
+    private boolean deltaBackup;
+    private int deltaBlockSize = DeltaBackupUtils.DEFAULT_BLOCK_SIZE;
+    private int maxDeltaCount = DeltaBackupUtils.DEFAULT_MAX_DELTA_COUNT;
+    private RotationMode rotationMode = RotationMode.RENAME;
 
     public FileBackupProcessor(String dataFileName, String backupFolderName, String backupFileName) {
         this.dataFileName = dataFileName;
@@ -31,19 +43,126 @@ public class FileBackupProcessor implements BackupProcessor {
         return backupFileName;
     }
 
+    public int getCompressionThreadCount() {
+        return compressionThreadCount;
+    }
+
+    /**
+     * Sets compression thread count, default is 1
+     * @param compressionThreadCount new value, more than 1 enables parallel compression
+     */
+    public void setCompressionThreadCount(int compressionThreadCount) {
+        if (compressionThreadCount < 1)
+            throw new RuntimeException("Invalid value for compression thread count, should be at least 1");
+        this.compressionThreadCount = compressionThreadCount;
+    }
+
+    public int getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    /**
+     * Sets block size for parallel compression, default is 128 KB
+     * @param compressionBlockSize new value, should be at least 32 KB
+     */
+    public void setCompressionBlockSize(int compressionBlockSize) {
+        if (compressionBlockSize < 32 * 1024)
+            throw new RuntimeException("Invalid value for compression block size, should be at least 32 KB");
+        this.compressionBlockSize = compressionBlockSize;
+    }
+
+    /**
+     * Returns compression codec, by default deflate with configured compression thread count and block size
+     * @return compression codec
+     */
+    public CompressionCodec getCompressionCodec() {
+        return compressionCodec != null ? compressionCodec :
+                new DeflateCodec(Deflater.DEFAULT_COMPRESSION, compressionThreadCount, compressionBlockSize);
+    }
+
+    /**
+     * Sets compression codec for new backups, restore detects the codec of the archive
+     * @param compressionCodec codec or null for default deflate codec
+     */
+    public void setCompressionCodec(CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    public boolean isDeltaBackup() {
+        return deltaBackup;
+    }
+
+    /**
+     * Enables delta backups, only changed blocks are archived between full backups
+     * @param deltaBackup true to enable
+     */
+    public void setDeltaBackup(boolean deltaBackup) {
+        this.deltaBackup = deltaBackup;
+    }
+
+    public int getDeltaBlockSize() {
+        return deltaBlockSize;
+    }
+
+    /**
+     * Sets block size for delta backup change detection, default is 64 KB
+     * @param deltaBlockSize new value, should be at least 4 KB
+     */
+    public void setDeltaBlockSize(int deltaBlockSize) {
+        if (deltaBlockSize < 4 * 1024)
+            throw new RuntimeException("Invalid value for delta block size, should be at least 4 KB");
+        this.deltaBlockSize = deltaBlockSize;
+    }
+
+    public int getMaxDeltaCount() {
+        return maxDeltaCount;
+    }
+
+    /**
+     * Sets number of delta backups before the next full backup, default is 10
+     * @param maxDeltaCount new value, should be between 1 and 99
+     */
+    public void setMaxDeltaCount(int maxDeltaCount) {
+        if ((maxDeltaCount < 1) || (maxDeltaCount > 99))
+            throw new RuntimeException("Invalid value for max delta count, should be between 1 and 99");
+        this.maxDeltaCount = maxDeltaCount;
+    }
+
+    public RotationMode getRotationMode() {
+        return rotationMode;
+    }
+
+    /**
+     * Sets rotation of backup copies for full backups, default is RENAME
+     * @param rotationMode new value
+     */
+    public void setRotationMode(RotationMode rotationMode) {
+        if (rotationMode == null)
+            throw new RuntimeException("Invalid value for rotation mode, should not be null");
+        this.rotationMode = rotationMode;
+    }
+
     @Override
     public String createRollingBackup() {
-        return BackupUtils.createRollingLocalBackup(dataFileName, backupFolderName, backupFileName);
+        if (deltaBackup) {
+            return DeltaBackupUtils.createDeltaBackup(dataFileName, backupFolderName, backupFileName,
+                    getCompressionCodec(), deltaBlockSize, maxDeltaCount);
+        } else {
+            return BackupUtils.createRollingLocalBackup(dataFileName, backupFolderName, backupFileName, getCompressionCodec(), rotationMode);
+        }
     }
 
     @Override
     public String restoreBackup() {
-        return BackupUtils.restoreBackup(dataFileName, backupFolderName, backupFileName);
+        return DeltaBackupUtils.restoreBackup(dataFileName, backupFolderName, backupFileName);
     }
 
     @Override
     public List<String> getBackupFileNames() {
-        return BackupUtils.getBackupFileNames(backupFolderName);
+        if (!deltaBackup && (rotationMode == RotationMode.GENERATION))
+            return BackupUtils.getGenerationBackupFileNames(backupFolderName, backupFileName, getCompressionCodec());
+        else
+            return BackupUtils.getBackupFileNames(backupFolderName);
     }
 
     @Override
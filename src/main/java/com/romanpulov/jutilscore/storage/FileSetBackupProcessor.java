@@ -0,0 +1,99 @@
+package com.romanpulov.jutilscore.storage;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Backup processor for a set of files in a data folder, like a database with its journal and indexes
+ * Files are backed up as entries of a single zip archive and restored together
+ */
+
+public class FileSetBackupProcessor implements BackupProcessor {
+    private final String dataFolderName;
+    private final List<String> dataFileNames;
+    private final String backupFolderName;
+    private final String backupFileName;
+    private Executor executor;
+
+    /**
+     * @param dataFolderName data folder
+     * @param dataFileNames file names relative to data folder, used as archive entry names
+     * @param backupFolderName backup folder
+     * @param backupFileName backup file name
+     */
+    public FileSetBackupProcessor(String dataFolderName, Collection<String> dataFileNames, String backupFolderName, String backupFileName) {
+        this.dataFolderName = dataFolderName;
+        this.dataFileNames = new ArrayList<>(dataFileNames);
+        this.backupFolderName = backupFolderName;
+        this.backupFileName = backupFileName;
+    }
+
+    /**
+     * Returns data folder name
+     * @return data folder name
+     */
+    @Override
+    public String getDataFileName() {
+        return dataFolderName;
+    }
+
+    public List<String> getDataFileNames() {
+        return dataFileNames;
+    }
+
+    @Override
+    public String getBackupFolderName() {
+        return backupFolderName;
+    }
+
+    @Override
+    public String getBackupFileName() {
+        return backupFileName;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets executor for parallel compression of the files
+     * @param executor executor or null for a thread per processor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public String createRollingBackup() {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (String dataFileName : dataFileNames) {
+            files.put(dataFileName, Paths.get(dataFolderName, dataFileName));
+        }
+
+        return BackupUtils.createRollingLocalFileSetBackup(files, backupFolderName, backupFileName, executor);
+    }
+
+    @Override
+    public String restoreBackup() {
+        return BackupUtils.restoreFileSetBackup(dataFolderName, backupFolderName, backupFileName);
+    }
+
+    @Override
+    public List<String> getBackupFileNames() {
+        return BackupUtils.getBackupFileNames(backupFolderName);
+    }
+
+    @Override
+    public InputStream createBackupInputStream(String backupFileName) throws IOException {
+        return new FileInputStream(BackupUtils.getFullFileName(backupFolderName, backupFileName));
+    }
+}
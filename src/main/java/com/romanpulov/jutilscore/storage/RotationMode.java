@@ -0,0 +1,17 @@
+package com.romanpulov.jutilscore.storage;
+
+/**
+ * Rotation of backup copies
+ */
+
+public enum RotationMode {
+    /**
+     * Copies are renamed to .bakNN on every backup
+     */
+    RENAME,
+
+    /**
+     * Each backup gets a new generation name listed in a generation index
+     */
+    GENERATION
+}
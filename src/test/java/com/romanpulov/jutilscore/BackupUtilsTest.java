@@ -1,6 +1,21 @@
 package com.romanpulov.jutilscore;
 
+import com.romanpulov.jutilscore.io.FileUtils;
+import com.romanpulov.jutilscore.io.HistogramIoMetrics;
+import com.romanpulov.jutilscore.io.IoEvent;
+import com.romanpulov.jutilscore.io.IoMetrics;
+import com.romanpulov.jutilscore.io.LatencyHistogram;
+import com.romanpulov.jutilscore.io.Lz4Codec;
+import com.romanpulov.jutilscore.io.ProgressTracker;
+import com.romanpulov.jutilscore.io.StoredCodec;
+import com.romanpulov.jutilscore.storage.BackupScheduler;
 import com.romanpulov.jutilscore.storage.BackupUtils;
+import com.romanpulov.jutilscore.storage.BackupVerification;
+import com.romanpulov.jutilscore.storage.ChunkStoreBackupProcessor;
+import com.romanpulov.jutilscore.storage.DeltaBackupUtils;
+import com.romanpulov.jutilscore.storage.FileBackupProcessor;
+import com.romanpulov.jutilscore.storage.FileSetBackupProcessor;
+import com.romanpulov.jutilscore.storage.RotationMode;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -8,10 +23,25 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 public class BackupUtilsTest {
     private static final Path folderPath = Paths.get(System.getProperty("java.io.tmpdir") + "jutils-core-file-utils-backup-test/");
@@ -30,6 +60,7 @@ public class BackupUtilsTest {
                     });
             Files.walk(folder)
                     .filter(path -> Files.isDirectory(path) && !path.equals(folder))
+                    .sorted(Comparator.reverseOrder())
                     .forEach(path -> {
                         System.out.println("Deleting directory:" + path.toAbsolutePath().toString());
                         try {
@@ -123,4 +154,558 @@ public class BackupUtilsTest {
 
     }
 
+    @Test
+    void parallelCompressionTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-parallel.bin");
+
+        byte[] b = new byte[1024 * 1024 + 123];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+
+        String dataFileName = filePath.toAbsolutePath().toString();
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-parallel";
+
+        FileBackupProcessor processor = new FileBackupProcessor(dataFileName, backupFolderName, "data-file-parallel-backup.bin");
+        processor.setCompressionThreadCount(4);
+        processor.setCompressionBlockSize(64 * 1024);
+
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertEquals(1, processor.getBackupFileNames().size());
+
+        Files.delete(filePath);
+
+        Assertions.assertNotNull(processor.restoreBackup());
+        Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+    }
+
+    @Test
+    void deltaBackupTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-delta.bin");
+
+        String dataFileName = filePath.toAbsolutePath().toString();
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-delta";
+        String archiveFileName = backupFolderName + "/data-file-delta-backup.zip";
+
+        FileBackupProcessor processor = new FileBackupProcessor(dataFileName, backupFolderName, "data-file-delta-backup.bin");
+        processor.setDeltaBackup(true);
+        processor.setDeltaBlockSize(16 * 1024);
+        processor.setMaxDeltaCount(3);
+
+        byte[] b = new byte[1024 * 1024];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+
+        // first backup is full
+
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertFalse(Files.exists(Paths.get(DeltaBackupUtils.getDeltaFileName(archiveFileName, 1))));
+
+        // changed bytes go to a small delta
+
+        try (RandomAccessFile file = new RandomAccessFile(dataFileName, "rw")) {
+            file.seek(100000);
+            file.write(new byte[] {1, 2, 3});
+        }
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Path delta1Path = Paths.get(DeltaBackupUtils.getDeltaFileName(archiveFileName, 1));
+        Assertions.assertTrue(Files.exists(delta1Path));
+        Assertions.assertTrue(Files.size(delta1Path) < 32 * 1024);
+
+        // appended and truncated
+
+        byte[] tail = new byte[20000];
+        new Random().nextBytes(tail);
+        Files.write(filePath, tail, StandardOpenOption.APPEND);
+        AtomicLong deltaBytesRead = new AtomicLong();
+        Assertions.assertNotNull(processor.createRollingBackupAsync(null, (phase, read, written) -> deltaBytesRead.set(read))
+                .get(30, TimeUnit.SECONDS));
+        Assertions.assertTrue(Files.exists(Paths.get(DeltaBackupUtils.getDeltaFileName(archiveFileName, 2))));
+        Assertions.assertEquals(Files.size(filePath), deltaBytesRead.get());
+
+        try (RandomAccessFile file = new RandomAccessFile(dataFileName, "rw")) {
+            file.setLength(500000);
+        }
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertTrue(Files.exists(Paths.get(DeltaBackupUtils.getDeltaFileName(archiveFileName, 3))));
+
+        byte[] expected = Files.readAllBytes(filePath);
+        Files.delete(filePath);
+        Assertions.assertNotNull(processor.restoreBackup());
+        Assertions.assertArrayEquals(expected, Files.readAllBytes(filePath));
+
+        // failed delta keeps the data file as is
+
+        Path delta3Path = Paths.get(DeltaBackupUtils.getDeltaFileName(archiveFileName, 3));
+        byte[] delta3 = Files.readAllBytes(delta3Path);
+        Files.write(delta3Path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        Files.write(filePath, tail);
+        Assertions.assertNull(processor.restoreBackup());
+        Assertions.assertArrayEquals(tail, Files.readAllBytes(filePath));
+        Assertions.assertFalse(Files.exists(Paths.get(FileUtils.getTempFileName(dataFileName))));
+        Files.write(delta3Path, delta3);
+        Files.write(filePath, expected);
+
+        // max delta count reached, next backup is full and deltas are removed
+
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertFalse(Files.exists(delta1Path));
+        Assertions.assertEquals(2, BackupUtils.getBackupFiles(backupFolderName).length);
+
+        Files.delete(filePath);
+        Assertions.assertNotNull(processor.restoreBackup());
+        Assertions.assertArrayEquals(expected, Files.readAllBytes(filePath));
+    }
+
+    @Test
+    void compressionCodecTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-codec.bin");
+
+        String dataFileName = filePath.toAbsolutePath().toString();
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-codec";
+
+        FileBackupProcessor processor = new FileBackupProcessor(dataFileName, backupFolderName, "data-file-codec-backup.bin");
+
+        // lz4 backups are rotated and restored
+
+        byte[] b1 = new byte[100000];
+        new Random().nextBytes(b1);
+        Files.write(filePath, b1);
+
+        processor.setCompressionCodec(new Lz4Codec());
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertEquals(2, processor.getBackupFileNames().size());
+        Assertions.assertTrue(processor.getBackupFileNames().contains("data-file-codec-backup.lz4"));
+
+        Files.delete(filePath);
+        Assertions.assertNotNull(processor.restoreBackup());
+        Assertions.assertArrayEquals(b1, Files.readAllBytes(filePath));
+
+        // codec switch keeps older archives, restore picks the latest one
+
+        Thread.sleep(1100);
+
+        byte[] b2 = new byte[50000];
+        new Random().nextBytes(b2);
+        Files.write(filePath, b2);
+
+        processor.setCompressionCodec(new StoredCodec());
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertEquals(3, processor.getBackupFileNames().size());
+
+        Files.delete(filePath);
+        Assertions.assertNotNull(processor.restoreBackup());
+        Assertions.assertArrayEquals(b2, Files.readAllBytes(filePath));
+    }
+
+    @Test
+    void generationRotationTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-gen.bin");
+
+        String dataFileName = filePath.toAbsolutePath().toString();
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-gen";
+
+        FileBackupProcessor processor = new FileBackupProcessor(dataFileName, backupFolderName, "data-file-gen-backup.bin");
+        processor.setRotationMode(RotationMode.GENERATION);
+
+        int keepCount = FileUtils.getFileKeepCopiesCount() + 1;
+        byte[] b = new byte[10000];
+        for (int i = 1; i <= keepCount + 2; i++) {
+            new Random().nextBytes(b);
+            Files.write(filePath, b);
+            Assertions.assertNotNull(processor.createRollingBackup());
+        }
+
+        // index lists live generations newest first, oldest ones are deleted
+
+        List<String> backupFileNames = processor.getBackupFileNames();
+        Assertions.assertEquals(keepCount, backupFileNames.size());
+        Assertions.assertEquals(String.format("data-file-gen-backup.zip.gen%06d", keepCount + 2), backupFileNames.get(0));
+        Assertions.assertEquals(String.format("data-file-gen-backup.zip.gen%06d", 3), backupFileNames.get(keepCount - 1));
+        Assertions.assertFalse(Files.exists(Paths.get(backupFolderName, "data-file-gen-backup.zip.gen000002")));
+        Assertions.assertEquals(keepCount, BackupUtils.getBackupFiles(backupFolderName).length);
+        Assertions.assertTrue(BackupUtils.isBackupFileName(backupFileNames.get(0)));
+
+        Files.delete(filePath);
+        Assertions.assertNotNull(processor.restoreBackup());
+        Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+    }
+
+    @Test
+    void fileSetBackupTest() throws Exception {
+        final Path dataPath = Files.createDirectories(Paths.get(folderPath.toString(), "data-file-set"));
+        String backupFolderName = folderPath.toAbsolutePath().toString() + "/backup-file-set";
+
+        List<String> fileNames = List.of("data.db", "data.db-wal", "data.idx");
+        byte[][] contents = new byte[fileNames.size()][];
+        for (int i = 0; i < fileNames.size(); i++) {
+            contents[i] = new byte[100000 * (i + 1)];
+            new Random().nextBytes(contents[i]);
+            Files.write(dataPath.resolve(fileNames.get(i)), contents[i]);
+        }
+
+        FileSetBackupProcessor processor = new FileSetBackupProcessor(dataPath.toString(), fileNames, backupFolderName, "data-set-backup");
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertEquals(2, processor.getBackupFileNames().size());
+
+        // failed backup keeps the archive and its copies as is
+
+        Path archivePath = Paths.get(backupFolderName, "data-set-backup.zip");
+        byte[] archive = Files.readAllBytes(archivePath);
+        FileSetBackupProcessor failingProcessor = new FileSetBackupProcessor(dataPath.toString(), List.of("data.db", "none.db"),
+                backupFolderName, "data-set-backup");
+        Assertions.assertNull(failingProcessor.createRollingBackup());
+        Assertions.assertEquals(2, processor.getBackupFileNames().size());
+        Assertions.assertArrayEquals(archive, Files.readAllBytes(archivePath));
+
+        // archive copies are verified against the manifest
+
+        List<BackupVerification> verifications = processor.verifyBackups();
+        Assertions.assertEquals(2, verifications.size());
+        Assertions.assertTrue(verifications.stream().allMatch(BackupVerification::isValid));
+
+        // all files are restored from the latest archive
+
+        for (String fileName : fileNames) {
+            Files.write(dataPath.resolve(fileName), new byte[] {1});
+        }
+        Assertions.assertEquals(dataPath.toString(), processor.restoreBackup());
+        for (int i = 0; i < fileNames.size(); i++) {
+            Assertions.assertArrayEquals(contents[i], Files.readAllBytes(dataPath.resolve(fileNames.get(i))));
+        }
+    }
+
+    @Test
+    void asyncBackupTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-async.bin");
+
+        String dataFileName = filePath.toAbsolutePath().toString();
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-async";
+
+        byte[] b = new byte[4 * 1024 * 1024];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+
+        FileBackupProcessor processor = new FileBackupProcessor(dataFileName, backupFolderName, "data-file-async-backup");
+
+        // backup reports phases and bytes
+
+        Set<ProgressTracker.Phase> phases = ConcurrentHashMap.newKeySet();
+        AtomicLong bytesRead = new AtomicLong();
+        Assertions.assertNotNull(processor.createRollingBackupAsync(null, (phase, read, written) -> {
+            phases.add(phase);
+            bytesRead.set(read);
+        }).get(30, TimeUnit.SECONDS));
+        Assertions.assertEquals(Set.of(ProgressTracker.Phase.ROTATE, ProgressTracker.Phase.COMPRESS, ProgressTracker.Phase.COMMIT), phases);
+        Assertions.assertEquals(b.length, bytesRead.get());
+        Assertions.assertEquals(1, processor.getBackupFileNames().size());
+
+        // cancelled backup leaves no archive
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicReference<CompletableFuture<String>> future = new AtomicReference<>();
+            future.set(processor.createRollingBackupAsync(executor, (phase, read, written) -> {
+                if (read > 0 && future.get() != null)
+                    future.get().cancel(false);
+            }));
+            Assertions.assertThrows(CancellationException.class, () -> future.get().get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+            Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, processor.getBackupFileNames().size());
+        try (Stream<Path> paths = Files.list(Paths.get(backupFolderName))) {
+            Assertions.assertTrue(paths.noneMatch(path -> path.toString().endsWith(FileUtils.getTempFileName(""))));
+        }
+
+        // restore
+
+        Files.write(filePath, new byte[] {1});
+        phases.clear();
+        Assertions.assertEquals(dataFileName, processor.restoreBackupAsync(null, (phase, read, written) -> phases.add(phase))
+                .get(30, TimeUnit.SECONDS));
+        Assertions.assertTrue(phases.contains(ProgressTracker.Phase.DECOMPRESS));
+        Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+    }
+
+    @Test
+    void backupSchedulerTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-scheduler.bin");
+        final Path otherFilePath  = Paths.get(folderPath.toString(), "data-file-scheduler-other.bin");
+
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-scheduler";
+
+        byte[] b = new byte[100000];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+        Files.write(otherFilePath, b);
+
+        FileBackupProcessor processor = new FileBackupProcessor(filePath.toString(), backupFolderName, "data-file-scheduler-backup");
+        FileBackupProcessor otherProcessor = new FileBackupProcessor(otherFilePath.toString(), backupFolderName, "data-file-scheduler-other-backup");
+
+        // tasks are run manually to control the order
+
+        List<Runnable> tasks = new ArrayList<>();
+        BackupScheduler scheduler = new BackupScheduler(1, 1024 * 1024, tasks::add);
+
+        CompletableFuture<String> first = scheduler.schedule(processor);
+        CompletableFuture<String> second = scheduler.schedule(processor);
+        CompletableFuture<String> other = scheduler.schedule(otherProcessor);
+        CompletableFuture<String> third = scheduler.schedule(processor);
+
+        // same folder runs one at a time, waiting requests are coalesced
+
+        Assertions.assertEquals(1, tasks.size());
+        Assertions.assertSame(second, third);
+        Assertions.assertNotSame(second, other);
+
+        tasks.remove(0).run();
+        Assertions.assertNotNull(first.getNow(null));
+        Assertions.assertFalse(second.isDone());
+        Assertions.assertEquals(1, tasks.size());
+
+        tasks.remove(0).run();
+        Assertions.assertNotNull(second.getNow(null));
+        Assertions.assertFalse(other.isDone());
+
+        tasks.remove(0).run();
+        Assertions.assertNotNull(other.getNow(null));
+        Assertions.assertTrue(tasks.isEmpty());
+
+        Assertions.assertEquals(3, processor.getBackupFileNames().size());
+
+        // error of a backup completes its future and releases the folder
+
+        FileBackupProcessor failingProcessor = new FileBackupProcessor(filePath.toString(), backupFolderName, "data-file-scheduler-failing") {
+            @Override
+            public String createRollingBackup() {
+                throw new AssertionError("backup failed");
+            }
+        };
+        CompletableFuture<String> failing = scheduler.schedule(failingProcessor);
+        CompletableFuture<String> next = scheduler.schedule(processor);
+
+        Runnable failingTask = tasks.remove(0);
+        Assertions.assertThrows(AssertionError.class, failingTask::run);
+        Assertions.assertTrue(failing.isCompletedExceptionally());
+        Assertions.assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        Assertions.assertNotNull(next.getNow(null));
+
+        // other folders wait for a running backup without a task
+
+        FileBackupProcessor otherFolderProcessor = new FileBackupProcessor(otherFilePath.toString(), backupFolderName + "-other",
+                "data-file-scheduler-other-backup");
+        CompletableFuture<String> sameFolder = scheduler.schedule(processor);
+        CompletableFuture<String> otherFolder = scheduler.schedule(otherFolderProcessor);
+        Assertions.assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        Assertions.assertNotNull(sameFolder.getNow(null));
+        Assertions.assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        Assertions.assertNotNull(otherFolder.getNow(null));
+        Assertions.assertTrue(tasks.isEmpty());
+
+        Assertions.assertThrows(RuntimeException.class, () -> new BackupScheduler(0, 0));
+    }
+
+    @Test
+    void ioMetricsTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-metrics.bin");
+
+        String dataFileName = filePath.toAbsolutePath().toString();
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-metrics";
+
+        byte[] b = new byte[200000];
+        Files.write(filePath, b);
+
+        HistogramIoMetrics metrics = new HistogramIoMetrics();
+        List<IoEvent> events = new ArrayList<>();
+        IoMetrics eventMetrics = events::add;
+        IoMetrics.register(metrics);
+        IoMetrics.register(eventMetrics);
+        try {
+            Assertions.assertNotNull(BackupUtils.createRollingLocalBackup(dataFileName, backupFolderName, "data-file-metrics-backup"));
+            Assertions.assertNotNull(BackupUtils.createRollingLocalBackup(dataFileName, backupFolderName, "data-file-metrics-backup"));
+            Assertions.assertNotNull(BackupUtils.restoreBackup(dataFileName, backupFolderName, "data-file-metrics-backup"));
+            Assertions.assertNull(BackupUtils.restoreBackup(dataFileName, backupFolderName, "data-file-metrics-none"));
+        } finally {
+            IoMetrics.unregister(metrics);
+            IoMetrics.unregister(eventMetrics);
+        }
+
+        HistogramIoMetrics.OperationMetrics backupMetrics = metrics.getMetrics(IoEvent.Operation.BACKUP);
+        Assertions.assertEquals(2, backupMetrics.getCount());
+        Assertions.assertEquals(2L * b.length, backupMetrics.getBytesIn());
+        Assertions.assertTrue(backupMetrics.getBytesOut() > 0);
+        Assertions.assertTrue(backupMetrics.getLatency().getValueAtPercentile(99) >= backupMetrics.getLatency().getValueAtPercentile(50));
+
+        Assertions.assertEquals(1, metrics.getMetrics(IoEvent.Operation.ROTATE).getCount());
+        Assertions.assertEquals(1, metrics.getMetrics(IoEvent.Operation.ROTATE).getFilesRotated());
+
+        HistogramIoMetrics.OperationMetrics restoreMetrics = metrics.getMetrics(IoEvent.Operation.RESTORE);
+        Assertions.assertEquals(2, restoreMetrics.getCount());
+        Assertions.assertEquals(1, restoreMetrics.getErrorCount());
+        Assertions.assertEquals(b.length, restoreMetrics.getBytesOut());
+
+        IoEvent backupEvent = events.stream().filter(event -> event.getOperation() == IoEvent.Operation.BACKUP).findFirst().orElseThrow();
+        Assertions.assertTrue(backupEvent.isSuccessful());
+        Assertions.assertTrue(backupEvent.getCompressionRatio() > 10);
+
+        // histogram keeps values within bucket precision
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        Assertions.assertEquals(100000, histogram.getCount());
+        Assertions.assertEquals(1, histogram.getMin());
+        Assertions.assertEquals(100000, histogram.getMax());
+        Assertions.assertEquals(50000, histogram.getValueAtPercentile(50), 50000 / 64.0);
+        Assertions.assertEquals(99000, histogram.getValueAtPercentile(99), 99000 / 64.0);
+        Assertions.assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    private static long countChunks(String backupFolderName) throws IOException {
+        try (Stream<Path> paths = Files.walk(Paths.get(backupFolderName, "chunks"))) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void chunkStoreBackupTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-chunk.bin");
+
+        String dataFileName = filePath.toAbsolutePath().toString();
+        String backupFolderName = filePath.getParent().toAbsolutePath().toString() + "/backup-chunk";
+
+        ChunkStoreBackupProcessor processor = new ChunkStoreBackupProcessor(dataFileName, backupFolderName, "data-file-chunk-backup");
+
+        byte[] b = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+
+        Assertions.assertNotNull(processor.createRollingBackup());
+        long firstChunkCount = countChunks(backupFolderName);
+        Assertions.assertTrue(firstChunkCount > 1);
+
+        // same content adds no chunks
+
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertEquals(firstChunkCount, countChunks(backupFolderName));
+
+        // inserted bytes only add chunks around the change
+
+        byte[] inserted = new byte[b.length + 100];
+        System.arraycopy(b, 0, inserted, 0, 1000000);
+        System.arraycopy(b, 1000000, inserted, 1000100, b.length - 1000000);
+        Files.write(filePath, inserted);
+
+        Assertions.assertNotNull(processor.createRollingBackup());
+        long secondChunkCount = countChunks(backupFolderName);
+        Assertions.assertTrue(secondChunkCount > firstChunkCount);
+        Assertions.assertTrue(secondChunkCount <= firstChunkCount + 3);
+
+        // older generations restore exactly
+
+        List<String> backupFileNames = processor.getBackupFileNames();
+        Assertions.assertEquals(3, backupFileNames.size());
+        Assertions.assertArrayEquals(inserted, processor.createBackupInputStream(backupFileNames.get(0)).readAllBytes());
+        Assertions.assertArrayEquals(b, processor.createBackupInputStream(backupFileNames.get(2)).readAllBytes());
+
+        // retention removes old manifests and unreferenced chunks
+
+        for (int i = 0; i < FileUtils.getFileKeepCopiesCount() + 1; i++) {
+            Assertions.assertNotNull(processor.createRollingBackup());
+        }
+        Assertions.assertEquals(FileUtils.getFileKeepCopiesCount() + 1, processor.getBackupFileNames().size());
+        Assertions.assertTrue(countChunks(backupFolderName) < secondChunkCount);
+
+        Files.delete(filePath);
+        Assertions.assertEquals(dataFileName, processor.restoreBackup());
+        Assertions.assertArrayEquals(inserted, Files.readAllBytes(filePath));
+
+        // chunks shared with another backup in the folder are kept
+
+        final Path otherFilePath = Paths.get(folderPath.toString(), "data-file-chunk-other.bin");
+        Files.write(otherFilePath, inserted);
+        ChunkStoreBackupProcessor otherProcessor = new ChunkStoreBackupProcessor(otherFilePath.toAbsolutePath().toString(),
+                backupFolderName, "data-file-chunk-other-backup");
+        Assertions.assertNotNull(otherProcessor.createRollingBackup());
+
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+        for (int i = 0; i < FileUtils.getFileKeepCopiesCount() + 1; i++) {
+            Assertions.assertNotNull(processor.createRollingBackup());
+        }
+
+        Files.delete(otherFilePath);
+        Assertions.assertNotNull(otherProcessor.restoreBackup());
+        Assertions.assertArrayEquals(inserted, Files.readAllBytes(otherFilePath));
+
+        // unreadable manifest of another backup keeps old generations for the next prune
+
+        Path otherManifestPath = Paths.get(backupFolderName, otherProcessor.getBackupFileNames().get(0));
+        byte[] otherManifest = Files.readAllBytes(otherManifestPath);
+        Files.write(otherManifestPath, new byte[] {1, 2, 3});
+        Assertions.assertNull(processor.createRollingBackup());
+        Assertions.assertEquals(FileUtils.getFileKeepCopiesCount() + 2, processor.getBackupFileNames().size());
+
+        Files.write(otherManifestPath, otherManifest);
+        Assertions.assertNotNull(processor.createRollingBackup());
+        Assertions.assertEquals(FileUtils.getFileKeepCopiesCount() + 1, processor.getBackupFileNames().size());
+        Assertions.assertArrayEquals(b, processor.createBackupInputStream(processor.getBackupFileNames().get(0)).readAllBytes());
+        Assertions.assertArrayEquals(inserted, otherProcessor.createBackupInputStream(otherProcessor.getBackupFileNames().get(0)).readAllBytes());
+    }
+
+    @Test
+    void verifyBackupsTest() throws Exception {
+        final Path filePath  = Paths.get(folderPath.toString(), "data-file-verify.bin");
+        String backupFolderName = folderPath.toAbsolutePath().toString() + "/backup-verify/";
+
+        FileBackupProcessor processor = new FileBackupProcessor(filePath.toString(), backupFolderName, "data-file-verify.bin");
+        FileBackupProcessor generationProcessor = new FileBackupProcessor(filePath.toString(), backupFolderName, "data-file-verify-gen.bin");
+        generationProcessor.setRotationMode(RotationMode.GENERATION);
+
+        byte[] data = new byte[100000];
+        Random random = new Random();
+        for (int i = 0; i < 3; i++) {
+            random.nextBytes(data);
+            Files.write(filePath, data);
+            Assertions.assertNotNull(processor.createRollingBackup());
+            Assertions.assertNotNull(generationProcessor.createRollingBackup());
+        }
+
+        // all retained copies match the manifest
+
+        List<BackupVerification> verifications = processor.verifyBackups();
+        Assertions.assertEquals(3, verifications.size());
+        Assertions.assertTrue(verifications.stream().allMatch(BackupVerification::isValid));
+
+        List<BackupVerification> generationVerifications = generationProcessor.verifyBackups();
+        Assertions.assertEquals(3, generationVerifications.size());
+        Assertions.assertTrue(generationVerifications.stream().allMatch(BackupVerification::isValid));
+
+        // corrupted copy is detected
+
+        String corruptedFileName = verifications.get(1).fileName();
+        try (RandomAccessFile file = new RandomAccessFile(backupFolderName + corruptedFileName, "rw")) {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xFF);
+        }
+
+        verifications = processor.verifyBackups();
+        Assertions.assertEquals(BackupVerification.Status.VALID, verifications.get(0).status());
+        Assertions.assertEquals(corruptedFileName, verifications.get(1).fileName());
+        Assertions.assertEquals(BackupVerification.Status.CORRUPTED, verifications.get(1).status());
+        Assertions.assertEquals(BackupVerification.Status.VALID, verifications.get(2).status());
+
+        // backups without manifest have nothing to verify
+
+        Assertions.assertTrue(new FileBackupProcessor(filePath.toString(), backupFolderName, "none.bin").verifyBackups().isEmpty());
+    }
 }
@@ -0,0 +1,46 @@
+package com.romanpulov.jutilscore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Child process for ProcessExecutor tests, portable unlike shell scripts
+ * Arguments: stdout line count, stderr line count, exit code, optional sleep in milliseconds before exit,
+ * optional length of a line of two-byte UTF-8 characters written to stdout
+ */
+public class ChildProcess {
+    public static String[] command(String... args) {
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                ChildProcess.class.getName()
+        ));
+        Collections.addAll(command, args);
+        return command.toArray(new String[0]);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int stdoutLines = Integer.parseInt(args[0]);
+        int stderrLines = Integer.parseInt(args[1]);
+        int exitCode = Integer.parseInt(args[2]);
+
+        for (int i = 0; i < Math.max(stdoutLines, stderrLines); i++) {
+            if (i < stdoutLines)
+                System.out.print("out " + i + "\r\n");
+            if (i < stderrLines)
+                System.err.print("err " + i + "\n");
+        }
+        if (args.length > 4) {
+            byte[] line = ("\u0436".repeat(Integer.parseInt(args[4])) + "\n").getBytes(StandardCharsets.UTF_8);
+            System.out.write(line, 0, line.length);
+        }
+        System.out.flush();
+        System.err.flush();
+        if (args.length > 3)
+            Thread.sleep(Long.parseLong(args[3]));
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,120 @@
+package com.romanpulov.jutilscore;
+
+import com.romanpulov.jutilscore.io.CompressionCodec;
+import com.romanpulov.jutilscore.io.CompressionCodecs;
+import com.romanpulov.jutilscore.io.DeflateCodec;
+import com.romanpulov.jutilscore.io.Lz4Codec;
+import com.romanpulov.jutilscore.io.StoredCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+public class CompressionCodecTest {
+
+    private static byte[] generateBytes(int length, boolean compressible) {
+        byte[] b = new byte[length];
+        Random random = new Random(length);
+        random.nextBytes(b);
+        if (compressible) {
+            // text-like content from a small random vocabulary
+            String[] words = new String[32];
+            for (int i = 0; i < words.length; i++) {
+                StringBuilder word = new StringBuilder();
+                for (int j = 0; j < 3 + random.nextInt(6); j++) {
+                    word.append((char) ('a' + random.nextInt(26)));
+                }
+                words[i] = word.append(' ').toString();
+            }
+            int i = 0;
+            while (i < length) {
+                for (char c : words[random.nextInt(words.length)].toCharArray()) {
+                    if (i < length) {
+                        b[i++] = (byte) c;
+                    }
+                }
+            }
+        }
+        return b;
+    }
+
+    private static byte[] roundTrip(CompressionCodec codec, byte[] b) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        codec.compress("entry.bin", new ByteArrayInputStream(b), compressed);
+        byte[] compressedBytes = compressed.toByteArray();
+
+        Assertions.assertTrue(codec.acceptsHeader(compressedBytes, compressedBytes.length));
+        Assertions.assertEquals(codec.getFileExtension(),
+                CompressionCodecs.detectCodec(compressedBytes, compressedBytes.length).getFileExtension());
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        codec.decompress(new ByteArrayInputStream(compressedBytes), decompressed);
+        Assertions.assertArrayEquals(b, decompressed.toByteArray());
+
+        return compressedBytes;
+    }
+
+    @Test
+    void testCodecs() throws Exception {
+        CompressionCodec[] codecs = {
+                new DeflateCodec(Deflater.BEST_SPEED),
+                new DeflateCodec(Deflater.BEST_COMPRESSION),
+                new DeflateCodec(Deflater.DEFAULT_COMPRESSION, 3, 64 * 1024),
+                new StoredCodec(),
+                new Lz4Codec()
+        };
+
+        for (CompressionCodec codec : codecs) {
+            for (int length : new int[] {0, 1, 12, 13, 100, 65536, 256 * 1024, 256 * 1024 + 1, 1024 * 1024 + 333}) {
+                roundTrip(codec, generateBytes(length, false));
+                roundTrip(codec, generateBytes(length, true));
+            }
+        }
+    }
+
+    @Test
+    void testCompressionRatio() throws Exception {
+        byte[] b = generateBytes(1024 * 1024, true);
+
+        int stored = roundTrip(new StoredCodec(), b).length;
+        int lz4 = roundTrip(new Lz4Codec(), b).length;
+        int deflate = roundTrip(new DeflateCodec(Deflater.BEST_COMPRESSION), b).length;
+
+        Assertions.assertTrue(stored > b.length);
+        Assertions.assertTrue(lz4 < b.length * 2 / 3);
+        Assertions.assertTrue(deflate < lz4);
+    }
+
+    @Test
+    void testDetection() throws Exception {
+        byte[] b = generateBytes(1000, true);
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        new StoredCodec().compress("entry.bin", new ByteArrayInputStream(b), zip);
+        Assertions.assertSame(CompressionCodecs.DEFAULT, CompressionCodecs.detectCodec(zip.toByteArray(), zip.size()));
+
+        ByteArrayOutputStream lz4 = new ByteArrayOutputStream();
+        new Lz4Codec().compress("entry.bin", new ByteArrayInputStream(b), lz4);
+        Assertions.assertTrue(CompressionCodecs.detectCodec(lz4.toByteArray(), lz4.size()) instanceof Lz4Codec);
+
+        Assertions.assertNull(CompressionCodecs.detectCodec(b, b.length));
+        Assertions.assertNull(CompressionCodecs.detectCodec(b, 2));
+    }
+
+    @Test
+    void testLz4Corrupted() throws Exception {
+        byte[] b = generateBytes(100000, true);
+
+        ByteArrayOutputStream lz4 = new ByteArrayOutputStream();
+        new Lz4Codec().compress("entry.bin", new ByteArrayInputStream(b), lz4);
+        byte[] compressed = lz4.toByteArray();
+        compressed[compressed.length / 2] ^= 0x55;
+
+        Assertions.assertThrows(IOException.class,
+                () -> new Lz4Codec().decompress(new ByteArrayInputStream(compressed), new ByteArrayOutputStream()));
+    }
+}
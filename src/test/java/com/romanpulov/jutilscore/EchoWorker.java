@@ -0,0 +1,39 @@
+package com.romanpulov.jutilscore;
+
+import com.romanpulov.jutilscore.process.ProcessWorkerPool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+
+/**
+ * Worker process for ProcessWorkerPool tests
+ * Requests: pid, sleep millis, exit, anything else is echoed in upper case
+ */
+public class EchoWorker {
+    public static String[] command() {
+        return new String[] {
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                EchoWorker.class.getName()
+        };
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.equals("pid"))
+                System.out.println(ProcessHandle.current().pid());
+            else if (line.startsWith("sleep "))
+                Thread.sleep(Long.parseLong(line.substring(6)));
+            else if (line.equals("exit"))
+                System.exit(1);
+            else
+                System.out.println(line.toUpperCase());
+            System.out.println(ProcessWorkerPool.DEFAULT_DELIMITER);
+            System.out.flush();
+        }
+    }
+}
@@ -1,19 +1,35 @@
 package com.romanpulov.jutilscore;
 
+import com.romanpulov.jutilscore.io.BufferPool;
+import com.romanpulov.jutilscore.io.CopyStrategy;
 import com.romanpulov.jutilscore.io.FileUtils;
+import com.romanpulov.jutilscore.io.IoThrottle;
+import com.romanpulov.jutilscore.io.LengthHintInputStream;
+import com.romanpulov.jutilscore.io.ThrottledOutputStream;
+import com.romanpulov.jutilscore.io.TokenBucket;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class FileUtilsTest {
 
@@ -32,6 +48,17 @@ public class FileUtilsTest {
                             e.printStackTrace();
                         }
                     });
+            Files.walk(folder)
+                    .filter(path -> Files.isDirectory(path) && !path.equals(folder))
+                    .sorted(Comparator.reverseOrder())
+                    .forEach(path -> {
+                        System.out.println("Deleting " + path.toAbsolutePath().toString());
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    });
             Files.delete(folder);
         }
     }
@@ -178,4 +205,261 @@ public class FileUtilsTest {
         Assertions.assertFalse(Files.exists(copy3FilePath));
 
     }
+
+    private static List<String> prepareListCopies(Path folder, byte[][] contents) throws IOException {
+        Files.createDirectories(folder);
+        String fileName = folder.resolve("test-file-rotation.bin").toString();
+        for (int cp = 0; cp < contents.length; cp++) {
+            if (contents[cp] != null)
+                Files.write(Paths.get(cp == 0 ? fileName : FileUtils.getCopyFileName(fileName, cp)), contents[cp]);
+        }
+        try (Stream<Path> paths = Files.list(folder)) {
+            return paths.map(path -> path.toAbsolutePath().toString()).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void parallelListCopiesTest() throws Exception {
+        int keepCopiesCount = FileUtils.getFileKeepCopiesCount();
+        FileUtils.setFileKeepCopiesCount(4);
+
+        // data file and copies with a gap at copy 2
+
+        byte[][] contents = new byte[5][];
+        for (int cp = 0; cp < contents.length; cp++) {
+            if (cp != 2) {
+                contents[cp] = new byte[100000 + cp];
+                new Random().nextBytes(contents[cp]);
+            }
+        }
+
+        Path sequentialFolder = Paths.get(folderPath.toString(), "rotation-sequential");
+        Path parallelFolder = Paths.get(folderPath.toString(), "rotation-parallel");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assertions.assertTrue(FileUtils.saveListCopies(prepareListCopies(sequentialFolder, contents), null));
+            Assertions.assertTrue(FileUtils.saveListCopies(prepareListCopies(parallelFolder, contents), executor));
+        } finally {
+            executor.shutdown();
+            FileUtils.setFileKeepCopiesCount(keepCopiesCount);
+        }
+
+        // same copies as sequential rotation and no temp files left
+
+        List<String> sequentialNames;
+        try (Stream<Path> paths = Files.list(sequentialFolder)) {
+            sequentialNames = paths.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+        List<String> parallelNames;
+        try (Stream<Path> paths = Files.list(parallelFolder)) {
+            parallelNames = paths.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+        Assertions.assertEquals(sequentialNames, parallelNames);
+        for (String name : sequentialNames) {
+            Assertions.assertArrayEquals(Files.readAllBytes(sequentialFolder.resolve(name)), Files.readAllBytes(parallelFolder.resolve(name)));
+        }
+
+        String fileName = parallelFolder.resolve("test-file-rotation.bin").toString();
+        Assertions.assertArrayEquals(contents[0], Files.readAllBytes(Paths.get(fileName)));
+        Assertions.assertArrayEquals(contents[0], Files.readAllBytes(Paths.get(FileUtils.getCopyFileName(fileName, 1))));
+        Assertions.assertArrayEquals(contents[1], Files.readAllBytes(Paths.get(FileUtils.getCopyFileName(fileName, 2))));
+        Assertions.assertArrayEquals(contents[3], Files.readAllBytes(Paths.get(FileUtils.getCopyFileName(fileName, 3))));
+        Assertions.assertArrayEquals(contents[3], Files.readAllBytes(Paths.get(FileUtils.getCopyFileName(fileName, 4))));
+    }
+
+    @Test
+    void cloneCopyTest() throws Exception {
+        final Path filePath = Paths.get(folderPath.toString(), "test-file-clone.bin");
+        final Path copyFilePath = Paths.get(folderPath.toString(), "test-file-clone-dest.bin");
+
+        byte[] b = new byte[1024 * 1024];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+
+        Assertions.assertEquals(CopyStrategy.TRANSFER, FileUtils.copyFile(filePath.toString(), copyFilePath.toString()));
+        Assertions.assertArrayEquals(b, Files.readAllBytes(copyFilePath));
+
+        // clone where the file system supports it, data copy otherwise
+
+        FileUtils.setCloneCopies(true);
+        try {
+            for (int i = 0; i < 2; i++) {
+                Files.delete(copyFilePath);
+                CopyStrategy copyStrategy = FileUtils.copyFile(filePath.toString(), copyFilePath.toString());
+                System.out.println("Copy strategy: " + copyStrategy);
+                Assertions.assertNotNull(copyStrategy);
+                Assertions.assertArrayEquals(b, Files.readAllBytes(copyFilePath));
+            }
+        } finally {
+            FileUtils.setCloneCopies(false);
+        }
+
+        Assertions.assertNull(FileUtils.copyFile(filePath.toString() + ".none", copyFilePath.toString()));
+    }
+
+    @Test
+    void copyTest() throws Exception {
+        final Path filePath = Paths.get(folderPath.toString(), "test-file-copy.bin");
+        final Path copyFilePath = Paths.get(folderPath.toString(), "test-file-copy-dest.bin");
+        final Path partCopyFilePath = Paths.get(folderPath.toString(), "test-file-copy-part.bin");
+
+        // generate and write random bytes file, larger than any single buffer
+
+        byte[] b = new byte[3 * 1024 * 1024 + 17];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+
+        // whole file copy
+
+        Assertions.assertTrue(FileUtils.copy(filePath.toString(), copyFilePath.toString()));
+        Assertions.assertArrayEquals(b, Files.readAllBytes(copyFilePath));
+
+        // copy of the rest of partially read file stream
+
+        int skipped = 1000;
+        try (FileInputStream inputStream = new FileInputStream(filePath.toString());
+             FileOutputStream outputStream = new FileOutputStream(partCopyFilePath.toString())) {
+            Assertions.assertEquals(skipped, inputStream.read(new byte[skipped]));
+            FileUtils.copyStream(inputStream, outputStream);
+            Assertions.assertEquals(-1, inputStream.read());
+        }
+        Assertions.assertArrayEquals(Arrays.copyOfRange(b, skipped, b.length), Files.readAllBytes(partCopyFilePath));
+    }
+
+    @Test
+    void commitTest() throws Exception {
+        final Path filePath = Paths.get(folderPath.toString(), "test-file-commit.bin");
+        final Path tempFilePath = Paths.get(FileUtils.getTempFileName(filePath.toString()));
+
+        Files.write(filePath, new byte[] {1, 2, 3});
+
+        // temp file replaces the existing target and disappears
+
+        byte[] b = new byte[100000];
+        new Random().nextBytes(b);
+        Files.write(tempFilePath, b);
+        Assertions.assertTrue(FileUtils.renameTempFile(tempFilePath.toString()));
+        Assertions.assertFalse(Files.exists(tempFilePath));
+        Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+
+        // synced commit
+
+        new Random().nextBytes(b);
+        Files.write(tempFilePath, b);
+        FileUtils.commitFile(tempFilePath.toString(), filePath.toString(), true);
+        Assertions.assertFalse(Files.exists(tempFilePath));
+        Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+
+        // missing temp file keeps the target
+
+        Assertions.assertFalse(FileUtils.renameTempFile(tempFilePath.toString()));
+        Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+    }
+
+    @Test
+    void bufferPoolTest() throws Exception {
+        int maxBufferSize = BufferPool.getMaxBufferSize();
+
+        // buffer size scales with input length
+
+        Assertions.assertEquals(BufferPool.MIN_BUFFER_SIZE, BufferPool.getBufferSize(100));
+        Assertions.assertEquals(128 * 1024, BufferPool.getBufferSize(100 * 1024));
+        Assertions.assertEquals(maxBufferSize, BufferPool.getBufferSize(-1));
+        Assertions.assertEquals(maxBufferSize, BufferPool.getBufferSize(Long.MAX_VALUE));
+
+        // released buffer is reused, pool is per thread so check on a fresh one
+
+        Thread thread = new Thread(() -> {
+            byte[] buffer = BufferPool.acquire(-1);
+            BufferPool.release(buffer);
+            Assertions.assertSame(buffer, BufferPool.acquire(100));
+            Assertions.assertNotSame(buffer, BufferPool.acquire(100));
+        });
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        thread.setUncaughtExceptionHandler((t, e) -> error.set(e));
+        thread.start();
+        thread.join();
+        Assertions.assertNull(error.get());
+
+        Assertions.assertThrows(RuntimeException.class, () -> BufferPool.setMaxBufferSize(1024));
+
+        // length hint is kept by stream wrappers
+
+        try (InputStream inputStream = new LengthHintInputStream(new ByteArrayInputStream(new byte[100 * 1024]), 100 * 1024)) {
+            Assertions.assertEquals(100 * 1024, FileUtils.getStreamLength(inputStream));
+            Assertions.assertEquals(1024, inputStream.read(new byte[1024]));
+            Assertions.assertEquals(99 * 1024, FileUtils.getStreamLength(inputStream));
+        }
+        Assertions.assertEquals(-1, FileUtils.getStreamLength(new LengthHintInputStream(new ByteArrayInputStream(new byte[1]), -1)));
+    }
+
+    @Test
+    void tokenBucketTest() throws Exception {
+        // wait time does not overflow for rates over the long range of nanosecond products
+
+        TokenBucket fastTokenBucket = new TokenBucket(20_000_000_000L);
+        long waitNanos = fastTokenBucket.reserve(30_000_000_000L);
+        Assertions.assertTrue((waitNanos > 400_000_000L) && (waitNanos <= 500_000_000L));
+
+        TokenBucket tokenBucket = new TokenBucket(10 * 1024 * 1024, 1024 * 1024);
+
+        // burst capacity passes without waiting
+
+        Assertions.assertEquals(0, tokenBucket.reserve(1024 * 1024));
+
+        // debt is paid back at the rate
+
+        long start = System.nanoTime();
+        tokenBucket.acquire(3 * 1024 * 1024);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Assertions.assertTrue(elapsedMillis >= 250, "Elapsed " + elapsedMillis);
+
+        Assertions.assertThrows(RuntimeException.class, () -> new TokenBucket(0));
+    }
+
+    @Test
+    void throttleTest() throws Exception {
+        final Path filePath = Paths.get(folderPath.toString(), "test-file-throttle.bin");
+        final Path copyFilePath = Paths.get(folderPath.toString(), "test-file-throttle-dest.bin");
+
+        byte[] b = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(b);
+        Files.write(filePath, b);
+
+        // channel copy with the call rate
+
+        long start = System.nanoTime();
+        Assertions.assertTrue(IoThrottle.run(new TokenBucket(4 * 1024 * 1024, 256 * 1024),
+                () -> FileUtils.copy(filePath.toString(), copyFilePath.toString())));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Assertions.assertTrue(elapsedMillis >= 350, "Elapsed " + elapsedMillis);
+        Assertions.assertArrayEquals(b, Files.readAllBytes(copyFilePath));
+        Assertions.assertNull(IoThrottle.getCallBucket());
+
+        // stream copy with the global rate
+
+        IoThrottle.setGlobalRate(8 * 1024 * 1024);
+        try {
+            Assertions.assertEquals(8 * 1024 * 1024, IoThrottle.getGlobalRate());
+            // burst of one second passes, the rest waits
+            start = System.nanoTime();
+            for (int i = 0; i < 5; i++) {
+                FileUtils.copyStream(new ByteArrayInputStream(b), new ByteArrayOutputStream());
+            }
+            elapsedMillis = (System.nanoTime() - start) / 1000000;
+            Assertions.assertTrue(elapsedMillis >= 150, "Elapsed " + elapsedMillis);
+        } finally {
+            IoThrottle.setGlobalRate(0);
+        }
+
+        // throttled stream
+
+        start = System.nanoTime();
+        try (ThrottledOutputStream outputStream = new ThrottledOutputStream(new ByteArrayOutputStream(), new TokenBucket(4 * 1024 * 1024, 256 * 1024))) {
+            outputStream.write(b);
+        }
+        elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Assertions.assertTrue(elapsedMillis >= 350, "Elapsed " + elapsedMillis);
+    }
 }
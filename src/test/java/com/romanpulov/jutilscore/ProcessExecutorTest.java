@@ -1,14 +1,35 @@
 package com.romanpulov.jutilscore;
 
+import com.romanpulov.jutilscore.io.CompressionCodecs;
+import com.romanpulov.jutilscore.process.ExecutionOptions;
+import com.romanpulov.jutilscore.process.OutputCapture;
 import com.romanpulov.jutilscore.process.ProcessExecutor;
+import com.romanpulov.jutilscore.process.ProcessPipeline;
+import com.romanpulov.jutilscore.process.ProcessTimeoutException;
+import com.romanpulov.jutilscore.process.ProcessWorkerPool;
+import com.romanpulov.jutilscore.storage.BackupUtils;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 public class ProcessExecutorTest {
 
@@ -96,4 +117,289 @@ public class ProcessExecutorTest {
         Assertions.assertTrue(result.output().contains("First=alpha"));
         Assertions.assertTrue(result.output().contains("Second=beta"));
     }
+
+    @Test
+    void testExecuteCommand() throws Exception {
+        ProcessExecutor.ExecutionResult result = ProcessExecutor.executeCommand(ChildProcess.command("2", "1", "3"));
+
+        Assertions.assertEquals(3, result.exitCode());
+        Assertions.assertTrue(result.output().contains("out 1" + System.lineSeparator()));
+        Assertions.assertTrue(result.output().contains("err 0" + System.lineSeparator()));
+
+        // long lines are not split
+
+        result = ProcessExecutor.executeCommand(ChildProcess.command("0", "0", "0", "0", "70000"));
+        Assertions.assertEquals(result.output().length() - System.lineSeparator().length(),
+                result.output().indexOf(System.lineSeparator()));
+    }
+
+    @Test
+    void testMaxLineLength() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+
+        ExecutionOptions options = new ExecutionOptions();
+        options.setMaxLineLength(5);
+        options.setCharset(StandardCharsets.UTF_8);
+        options.setLineListener((source, line) -> lines.add(line));
+
+        ProcessExecutor.execute(options, ChildProcess.command("0", "0", "0", "0", "7"));
+
+        // long line is split at character boundaries
+
+        Assertions.assertEquals(List.of("\u0436\u0436", "\u0436\u0436", "\u0436\u0436", "\u0436"), lines);
+    }
+
+    @Test
+    void testExecuteStreaming() throws Exception {
+        List<String> stdoutLines = new CopyOnWriteArrayList<>();
+        List<String> stderrLines = new CopyOnWriteArrayList<>();
+        AtomicLong chunkBytes = new AtomicLong();
+
+        ExecutionOptions options = new ExecutionOptions();
+        options.setCaptureLimit(100, 100);
+        options.setCharset(StandardCharsets.UTF_8);
+        options.setLineListener((source, line) ->
+                (source == ProcessExecutor.OutputSource.STDOUT ? stdoutLines : stderrLines).add(line));
+        options.setChunkListener((source, buffer, offset, length) -> chunkBytes.addAndGet(length));
+
+        ProcessExecutor.StreamingResult result = ProcessExecutor.execute(options, ChildProcess.command("10000", "5", "0"));
+        Assertions.assertEquals(0, result.exitCode());
+
+        // lines are separated by stream with terminators removed
+
+        Assertions.assertEquals(10000, stdoutLines.size());
+        Assertions.assertEquals("out 9999", stdoutLines.get(9999));
+        Assertions.assertEquals(List.of("err 0", "err 1", "err 2", "err 3", "err 4"), stderrLines);
+
+        // capture keeps head and tail only
+
+        OutputCapture stdout = result.stdout();
+        Assertions.assertEquals(chunkBytes.get() - result.stderr().getTotalBytes(), stdout.getTotalBytes());
+        Assertions.assertTrue(stdout.isTruncated());
+        Assertions.assertEquals(stdout.getTotalBytes() - 200, stdout.getTruncatedBytes());
+        Assertions.assertTrue(new String(stdout.getHead(), StandardCharsets.UTF_8).startsWith("out 0\r\nout 1\r\n"));
+        Assertions.assertTrue(new String(stdout.getTail(), StandardCharsets.UTF_8).endsWith("out 9999\r\n"));
+        Assertions.assertTrue(stdout.toString(StandardCharsets.UTF_8).contains("bytes truncated"));
+
+        Assertions.assertFalse(result.stderr().isTruncated());
+        Assertions.assertEquals("err 0\nerr 1\nerr 2\nerr 3\nerr 4\n", result.stderr().toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testExecuteRaw() throws Exception {
+        ProcessExecutor.StreamingResult result = ProcessExecutor.executeCommandRaw(ChildProcess.command("3", "0", "0"));
+
+        // bytes are kept as written, line terminators are not rewritten
+
+        Assertions.assertEquals(0, result.exitCode());
+        Assertions.assertNull(result.stderr());
+        String output = result.stdout().toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals("out 0\r\nout 1\r\nout 2\r\n", output);
+        Assertions.assertEquals(output.length(), result.stdout().toByteBuffer().remaining());
+
+        // whole output is kept with unlimited capture
+
+        ExecutionOptions options = new ExecutionOptions();
+        options.setCaptureUnlimited();
+        result = ProcessExecutor.execute(options, ChildProcess.command("100000", "0", "0"));
+
+        Assertions.assertFalse(result.stdout().isTruncated());
+        byte[] bytes = result.stdout().toByteArray();
+        Assertions.assertEquals(result.stdout().getTotalBytes(), bytes.length);
+        Assertions.assertTrue(new String(bytes, StandardCharsets.UTF_8).endsWith("out 99998\r\nout 99999\r\n"));
+    }
+
+    @Test
+    void testExecuteBatch() throws Exception {
+        ProcessExecutor executor = new ProcessExecutor(2);
+
+        List<String[]> commands = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            commands.add(ChildProcess.command(String.valueOf(i + 1), "0", String.valueOf(i)));
+
+        List<ProcessExecutor.BatchResult> listened = new CopyOnWriteArrayList<>();
+        List<ProcessExecutor.BatchResult> results = executor.executeBatch(commands, Duration.ofMinutes(1), listened::add);
+
+        Assertions.assertEquals(results, listened);
+        Assertions.assertEquals(List.of(0, 1, 2, 3, 4, 5),
+                results.stream().map(ProcessExecutor.BatchResult::index).sorted().collect(Collectors.toList()));
+        for (ProcessExecutor.BatchResult result : results) {
+            Assertions.assertNull(result.error());
+            Assertions.assertEquals(result.index(), result.result().exitCode());
+            Assertions.assertTrue(result.result().output().contains("out " + result.index()));
+        }
+    }
+
+    @Test
+    void testCommandTimeout() throws Exception {
+        ProcessExecutor executor = new ProcessExecutor(1);
+        executor.setCommandTimeout(Duration.ofMillis(500));
+
+        long start = System.nanoTime();
+        CompletableFuture<ProcessExecutor.ExecutionResult> running = executor.submit(ChildProcess.command("1", "0", "0", "30000"));
+
+        // queued command is cancelled before it starts
+
+        CompletableFuture<ProcessExecutor.ExecutionResult> queued = executor.submit(ChildProcess.command("1", "0", "0"));
+        queued.cancel(true);
+        Assertions.assertTrue(queued.isCancelled());
+
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, running::get);
+        Assertions.assertInstanceOf(ProcessTimeoutException.class, e.getCause());
+        Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(20).toNanos());
+
+        // executor is usable after timeout
+
+        Assertions.assertEquals(0, executor.submit(ChildProcess.command("1", "0", "0")).get().exitCode());
+    }
+
+    @Test
+    void testBatchTimeout() throws Exception {
+        ProcessExecutor executor = new ProcessExecutor(1);
+
+        List<String[]> commands = List.of(
+                ChildProcess.command("1", "0", "7"),
+                ChildProcess.command("1", "0", "0", "30000"),
+                ChildProcess.command("1", "0", "0", "30000")
+        );
+
+        long start = System.nanoTime();
+        List<ProcessExecutor.BatchResult> results = executor.executeBatch(commands, Duration.ofSeconds(5), null);
+        Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(20).toNanos());
+
+        Assertions.assertEquals(3, results.size());
+        Assertions.assertEquals(0, results.get(0).index());
+        Assertions.assertEquals(7, results.get(0).result().exitCode());
+        Assertions.assertTrue(results.get(1).isTimedOut());
+        Assertions.assertTrue(results.get(2).isTimedOut());
+    }
+
+    @Test
+    void testWorkerPool() throws Exception {
+        try (ProcessWorkerPool pool = new ProcessWorkerPool(2,
+                ProcessWorkerPool.delimitedProtocol(ProcessWorkerPool.DEFAULT_DELIMITER), EchoWorker.command())) {
+            pool.setMaxUses(5);
+            pool.setHealthCheck("ping", Duration.ZERO);
+
+            // workers are reused
+
+            Assertions.assertEquals("HELLO" + System.lineSeparator(), pool.execute("hello"));
+            String pid = pool.execute("pid");
+            Assertions.assertEquals(pid, pool.execute("pid"));
+            Assertions.assertEquals(1, pool.getStartedCount());
+
+            // concurrent requests do not exceed pool size
+
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+                futures.add(pool.submit("request " + i));
+            for (int i = 0; i < 20; i++)
+                Assertions.assertEquals("REQUEST " + i + System.lineSeparator(), futures.get(i).get());
+
+            // workers are recycled after max uses
+
+            Set<String> pids = new HashSet<>();
+            for (int i = 0; i < 10; i++)
+                pids.add(pool.execute("pid"));
+            Assertions.assertTrue(pids.size() >= 2);
+            Assertions.assertTrue(pool.getStartedCount() > 2);
+        }
+
+        // health checks do not count as uses
+
+        try (ProcessWorkerPool pool = new ProcessWorkerPool(1,
+                ProcessWorkerPool.delimitedProtocol(ProcessWorkerPool.DEFAULT_DELIMITER), EchoWorker.command())) {
+            pool.setMaxUses(2);
+            pool.setHealthCheck("ping", Duration.ZERO);
+
+            String pid = pool.execute("pid");
+            Assertions.assertEquals(pid, pool.execute("pid"));
+            Assertions.assertNotEquals(pid, pool.execute("pid"));
+            Assertions.assertEquals(2, pool.getStartedCount());
+        }
+    }
+
+    @Test
+    void testWorkerPoolShell() throws Exception {
+        Assumptions.assumeFalse(System.getProperty("os.name", "").toLowerCase().startsWith("windows"));
+
+        try (ProcessWorkerPool pool = new ProcessWorkerPool(1, ProcessWorkerPool.shellProtocol(), "sh")) {
+            pool.setRequestTimeout(Duration.ofSeconds(10));
+
+            // output is returned as is with or without trailing newline
+
+            Assertions.assertEquals("hello" + System.lineSeparator(), pool.execute("echo hello"));
+            Assertions.assertEquals("x", pool.execute("printf x"));
+            Assertions.assertEquals("", pool.execute("true"));
+            Assertions.assertEquals(1, pool.getStartedCount());
+        }
+    }
+
+    @Test
+    void testWorkerPoolFailures() throws Exception {
+        try (ProcessWorkerPool pool = new ProcessWorkerPool(1,
+                ProcessWorkerPool.delimitedProtocol(ProcessWorkerPool.DEFAULT_DELIMITER), EchoWorker.command())) {
+            pool.setRequestTimeout(Duration.ofSeconds(2));
+
+            // died worker is replaced
+
+            Assertions.assertThrows(IOException.class, () -> pool.execute("exit"));
+            Assertions.assertEquals("OK" + System.lineSeparator(), pool.execute("ok"));
+            Assertions.assertEquals(2, pool.getStartedCount());
+
+            // timed out worker is killed and replaced
+
+            long start = System.nanoTime();
+            Assertions.assertThrows(ProcessTimeoutException.class, () -> pool.execute("sleep 30000"));
+            Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(20).toNanos());
+            Assertions.assertEquals("OK" + System.lineSeparator(), pool.execute("ok"));
+            Assertions.assertEquals(3, pool.getStartedCount());
+
+            // cancelled request waiting for a worker is not sent
+
+            CompletableFuture<String> running = pool.submit("sleep 500");
+            CompletableFuture<String> queued = pool.submit("exit");
+            queued.cancel(false);
+            Assertions.assertEquals("", running.get());
+            Assertions.assertEquals("OK" + System.lineSeparator(), pool.execute("ok"));
+            Assertions.assertEquals(3, pool.getStartedCount());
+        }
+    }
+
+    @Test
+    void testPipeline() throws Exception {
+        String delimiterLine = ProcessWorkerPool.DEFAULT_DELIMITER + System.lineSeparator();
+        ProcessPipeline pipeline = new ProcessPipeline(ChildProcess.command("1000", "10", "0")).pipe(EchoWorker.command());
+
+        // stream
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Assertions.assertArrayEquals(new int[] {0, 0}, pipeline.transferTo(outputStream));
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        Assertions.assertTrue(output.startsWith("OUT 0" + System.lineSeparator() + delimiterLine));
+        Assertions.assertTrue(output.endsWith("OUT 999" + System.lineSeparator() + delimiterLine));
+        Assertions.assertFalse(output.contains("ERR"));
+
+        // file
+
+        Path outputPath = Paths.get(folderPath.toString(), "pipeline.txt");
+        Assertions.assertArrayEquals(new int[] {0, 0}, pipeline.redirectTo(outputPath.toFile()));
+        Assertions.assertEquals(output, Files.readString(outputPath, StandardCharsets.UTF_8));
+
+        // rolling backup
+
+        String backupFolderName = folderPath.toString() + "/pipeline-backup";
+        Assertions.assertNotNull(BackupUtils.createRollingLocalBackup(pipeline, backupFolderName, "pipeline.txt",
+                CompressionCodecs.DEFAULT));
+        Assertions.assertNotNull(BackupUtils.restoreBackup(outputPath.toString(), backupFolderName, "pipeline.txt"));
+        Assertions.assertEquals(output, Files.readString(outputPath, StandardCharsets.UTF_8));
+
+        // failed process fails the backup
+
+        ProcessPipeline failedPipeline = new ProcessPipeline(ChildProcess.command("1000", "0", "5")).pipe(EchoWorker.command());
+        Assertions.assertNull(BackupUtils.createRollingLocalBackup(failedPipeline, backupFolderName, "failed.txt",
+                CompressionCodecs.DEFAULT));
+        Assertions.assertEquals(1, BackupUtils.getBackupFileNames(backupFolderName).size());
+        Assertions.assertThrows(IOException.class, () -> failedPipeline.consume(inputStream -> inputStream.readAllBytes()));
+    }
 }
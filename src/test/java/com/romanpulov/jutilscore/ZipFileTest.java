@@ -1,6 +1,8 @@
 package com.romanpulov.jutilscore;
 
+import com.romanpulov.jutilscore.io.FileUtils;
 import com.romanpulov.jutilscore.io.ZipFileUtils;
+import com.romanpulov.jutilscore.io.ZipIndex;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -10,7 +12,21 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 public class ZipFileTest {
 
@@ -19,7 +35,8 @@ public class ZipFileTest {
     static void clearFolder() throws Exception  {
         if (Files.exists(folderPath)) {
             Files.walk(folderPath)
-                    .filter(path -> !Files.isDirectory(path))
+                    .filter(path -> !path.equals(folderPath))
+                    .sorted(Comparator.reverseOrder())
                     .forEach(path -> {
                         System.out.println("Deleting " + path.toAbsolutePath().toString());
                         try {
@@ -99,4 +116,310 @@ public class ZipFileTest {
 
         Assertions.assertArrayEquals(b, Files.readAllBytes(unZipFilePath));
     }
+
+    @Test
+    void testZipStreamParallel() throws Exception {
+        final int blockSize = 64 * 1024;
+
+        // block multiples, partial blocks and empty input
+
+        for (int length : new int[] {0, 100, blockSize, 3 * blockSize, 3 * blockSize + 1000, 50 * blockSize + 7}) {
+            final Path filePath  = Paths.get(folderPath.toString(), "test-parallel-" + length + ".bin");
+            final Path zipFilePath  = Paths.get(folderPath.toString(), ZipFileUtils.getZipFileName(filePath.getFileName().toString()));
+
+            // half random, half repeated content
+
+            byte[] b = new byte[length];
+            new Random().nextBytes(b);
+            for (int i = length / 2; i < length; i++) {
+                b[i] = b[i % 1000];
+            }
+            Files.write(filePath, b);
+
+            try (InputStream inputStream = new FileInputStream(filePath.toString());
+                 OutputStream outputStream = new FileOutputStream(zipFilePath.toString())) {
+                ZipFileUtils.zipStream(filePath.getFileName().toString(), inputStream, outputStream, 4, blockSize);
+            }
+            Files.delete(filePath);
+
+            // read with ZipFile
+
+            Assertions.assertTrue(ZipFileUtils.unZipFile(folderPath.toAbsolutePath() + File.separator, zipFilePath.getFileName().toString()));
+            Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+
+            // read with ZipInputStream
+
+            try (InputStream inputStream = new FileInputStream(zipFilePath.toString());
+                 ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                Assertions.assertEquals(filePath.getFileName().toString(), ZipFileUtils.unZipStream(inputStream, outputStream));
+                Assertions.assertArrayEquals(b, outputStream.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    void testUnZipToFile() throws Exception {
+        final Path zipFilePath  = Paths.get(folderPath.toString(), "test-unzip-to-file.zip");
+        final Path filePath  = Paths.get(folderPath.toString(), "test-unzip-to-file.bin");
+
+        byte[] b = new byte[3 * 1024 * 1024 + 11];
+        new Random().nextBytes(b);
+        for (int i = b.length / 2; i < b.length; i++) {
+            b[i] = b[i % 1000];
+        }
+
+        // single threaded and parallel archives
+
+        for (int threadCount : new int[] {1, 4}) {
+            try (InputStream inputStream = new ByteArrayInputStream(b);
+                 OutputStream outputStream = new FileOutputStream(zipFilePath.toString())) {
+                ZipFileUtils.zipStream("entry.bin", inputStream, outputStream, threadCount, ZipFileUtils.DEFAULT_PARALLEL_BLOCK_SIZE);
+            }
+
+            Files.write(filePath, new byte[10 * 1024 * 1024]);
+            Assertions.assertEquals("entry.bin", ZipFileUtils.unZipToFile(zipFilePath.toString(), filePath.toString()));
+            Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+        }
+
+        // stored entry
+
+        CRC32 crc = new CRC32();
+        crc.update(b);
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFilePath.toString()))) {
+            ZipEntry entry = new ZipEntry("stored.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(b.length);
+            entry.setCrc(crc.getValue());
+            zipOutputStream.putNextEntry(entry);
+            zipOutputStream.write(b);
+            zipOutputStream.closeEntry();
+        }
+        Assertions.assertEquals("stored.bin", ZipFileUtils.unZipToFile(zipFilePath.toString(), filePath.toString()));
+        Assertions.assertArrayEquals(b, Files.readAllBytes(filePath));
+
+        // corrupted content is detected
+
+        try (InputStream inputStream = new ByteArrayInputStream(b);
+             OutputStream outputStream = new FileOutputStream(zipFilePath.toString())) {
+            ZipFileUtils.zipStream("entry.bin", inputStream, outputStream);
+        }
+        try (RandomAccessFile zipFile = new RandomAccessFile(zipFilePath.toString(), "rw")) {
+            zipFile.seek(1000);
+            int value = zipFile.read();
+            zipFile.seek(1000);
+            zipFile.write(value ^ 0xff);
+        }
+        Assertions.assertThrows(IOException.class, () -> ZipFileUtils.unZipToFile(zipFilePath.toString(), filePath.toString()));
+
+        Files.delete(zipFilePath);
+        Files.delete(filePath);
+    }
+
+    @Test
+    void testZipFiles() throws Exception {
+        final Path sourcePath = Files.createDirectories(Paths.get(folderPath.toString(), "zip-files-source"));
+        final Path destPath = Paths.get(folderPath.toString(), "zip-files-dest");
+        final Path zipFilePath = Paths.get(folderPath.toString(), "zip-files.zip");
+        final Path tempPath = Files.createDirectories(Paths.get(folderPath.toString(), "zip-files-temp"));
+
+        Map<String, Path> files = new LinkedHashMap<>();
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            byte[] b = new byte[i * 300000];
+            new Random().nextBytes(b);
+            Path filePath = Paths.get(sourcePath.toString(), "file-" + i + ".bin");
+            Files.write(filePath, b);
+            files.put(i == 4 ? "sub/file-" + i + ".bin" : "file-" + i + ".bin", filePath);
+            contents.put(i == 4 ? "sub/file-" + i + ".bin" : "file-" + i + ".bin", b);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (OutputStream outputStream = new FileOutputStream(zipFilePath.toString())) {
+            ZipFileUtils.zipFiles(files, outputStream, 6, executor, tempPath);
+        } finally {
+            executor.shutdown();
+        }
+
+        // deflated entries are removed from the temp folder
+
+        try (Stream<Path> tempFiles = Files.list(tempPath)) {
+            Assertions.assertEquals(0, tempFiles.count());
+        }
+
+        // entries in map order, readable with ZipFile
+
+        try (ZipFile zipFile = new ZipFile(zipFilePath.toString())) {
+            Assertions.assertEquals(List.copyOf(files.keySet()), zipFile.stream().map(ZipEntry::getName).toList());
+            for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+                try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(content.getKey()))) {
+                    Assertions.assertArrayEquals(content.getValue(), inputStream.readAllBytes());
+                }
+            }
+        }
+
+        // unzip all entries
+
+        Assertions.assertEquals(List.copyOf(files.keySet()), ZipFileUtils.unZipAll(zipFilePath.toString(), destPath.toString()));
+        for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+            Assertions.assertArrayEquals(content.getValue(), Files.readAllBytes(destPath.resolve(content.getKey())));
+        }
+
+        // entries outside of the folder are rejected
+
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFilePath.toString()))) {
+            zipOutputStream.putNextEntry(new ZipEntry("../outside.bin"));
+            zipOutputStream.write(new byte[] {1, 2, 3});
+            zipOutputStream.closeEntry();
+        }
+        Assertions.assertThrows(IOException.class, () -> ZipFileUtils.unZipAll(zipFilePath.toString(), destPath.toString()));
+        Assertions.assertFalse(Files.exists(Paths.get(folderPath.toString(), "outside.bin")));
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            if (Arrays.equals(bytes, i, i + target.length, target, 0, target.length))
+                return i;
+        }
+        return -1;
+    }
+
+    @Test
+    void testZipIndex() throws Exception {
+        final Path zipFilePath = Paths.get(folderPath.toString(), "zip-index.zip");
+        final Path filePath = Paths.get(folderPath.toString(), "zip-index-entry.bin");
+
+        byte[] deflated = new byte[500000];
+        new Random().nextBytes(deflated);
+        byte[] stored = new byte[300000];
+        new Random().nextBytes(stored);
+
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFilePath.toString()))) {
+            zipOutputStream.putNextEntry(new ZipEntry("first.bin"));
+            zipOutputStream.write(deflated);
+            zipOutputStream.closeEntry();
+
+            ZipEntry entry = new ZipEntry("stored.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCrc(crc.getValue());
+            zipOutputStream.putNextEntry(entry);
+            zipOutputStream.write(stored);
+            zipOutputStream.closeEntry();
+
+            zipOutputStream.putNextEntry(new ZipEntry("empty.bin"));
+            zipOutputStream.closeEntry();
+            zipOutputStream.setComment("archive comment");
+        }
+
+        try (ZipIndex zipIndex = ZipIndex.open(zipFilePath.toString())) {
+            Assertions.assertEquals(List.of("first.bin", "stored.bin", "empty.bin"), zipIndex.getEntryNames());
+            Assertions.assertEquals(stored.length, zipIndex.getEntry("stored.bin").getSize());
+            Assertions.assertNull(zipIndex.getEntry("missing.bin"));
+
+            // streams of single entries
+
+            try (InputStream inputStream = zipIndex.getInputStream("first.bin")) {
+                Assertions.assertArrayEquals(deflated, inputStream.readAllBytes());
+            }
+            try (InputStream inputStream = zipIndex.getInputStream("empty.bin")) {
+                Assertions.assertEquals(0, inputStream.readAllBytes().length);
+            }
+
+            // byte range of stored entry
+
+            try (InputStream inputStream = zipIndex.getRangeInputStream("stored.bin", 1000, 5000)) {
+                Assertions.assertArrayEquals(Arrays.copyOfRange(stored, 1000, 6000), inputStream.readAllBytes());
+            }
+            Assertions.assertThrows(IOException.class, () -> zipIndex.getRangeInputStream("first.bin", 0, 10));
+            Assertions.assertThrows(IOException.class, () -> zipIndex.getRangeInputStream("stored.bin", 1, stored.length));
+
+            // extract single entries
+
+            zipIndex.extract("stored.bin", filePath.toString());
+            Assertions.assertArrayEquals(stored, Files.readAllBytes(filePath));
+            zipIndex.extract("first.bin", filePath.toString());
+            Assertions.assertArrayEquals(deflated, Files.readAllBytes(filePath));
+            Assertions.assertThrows(IOException.class, () -> zipIndex.extract("missing.bin", filePath.toString()));
+        }
+
+        // corrupted stored entry is detected
+
+        byte[] archive = Files.readAllBytes(zipFilePath);
+        int storedOffset = indexOf(archive, Arrays.copyOf(stored, 16));
+        Assertions.assertTrue(storedOffset > 0);
+        archive[storedOffset + 1000] ^= 0xFF;
+        Files.write(zipFilePath, archive);
+        archive[storedOffset + 1000] ^= 0xFF;
+
+        try (ZipIndex zipIndex = ZipIndex.open(zipFilePath.toString())) {
+            try (InputStream inputStream = zipIndex.getInputStream("stored.bin")) {
+                Assertions.assertThrows(ZipException.class, inputStream::readAllBytes);
+            }
+            Assertions.assertThrows(ZipException.class, () -> zipIndex.extract("stored.bin", filePath.toString()));
+        }
+        Files.write(zipFilePath, archive);
+
+        // empty entry with ZipInputStream
+
+        try (InputStream inputStream = new FileInputStream(zipFilePath.toString());
+             ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            Assertions.assertEquals("first.bin", ZipFileUtils.unZipStream(inputStream, outputStream));
+            Assertions.assertArrayEquals(deflated, outputStream.toByteArray());
+        }
+
+        Files.delete(zipFilePath);
+        Files.delete(filePath);
+    }
+
+    @Test
+    void testZipStreamLargerThanHeap() throws Exception {
+        final Path zipFilePath  = Paths.get(folderPath.toString(), "test-large.zip");
+
+        // generated input larger than the heap, compressible to keep the archive small
+
+        final long length = Runtime.getRuntime().maxMemory() + 1024 * 1024;
+        final byte[] block = new byte[1024];
+        new Random().nextBytes(block);
+
+        CRC32 inputCrc = new CRC32();
+        InputStream inputStream = new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (position >= length)
+                    return -1;
+                int count = (int) Math.min(len, length - position);
+                for (int i = 0; i < count; i++) {
+                    b[off + i] = block[(int) ((position + i) % block.length)];
+                }
+                inputCrc.update(b, off, count);
+                position += count;
+                return count;
+            }
+        };
+
+        try (OutputStream outputStream = new FileOutputStream(zipFilePath.toString())) {
+            FileUtils.copyStreamWithZip("test-large.bin", inputStream, outputStream);
+        }
+
+        // unzip and compare length and checksum
+
+        CRC32 outputCrc = new CRC32();
+        try (InputStream zipInputStream = new FileInputStream(zipFilePath.toString());
+             CheckedOutputStream outputStream = new CheckedOutputStream(OutputStream.nullOutputStream(), outputCrc)) {
+            Assertions.assertEquals("test-large.bin", ZipFileUtils.unZipStream(zipInputStream, outputStream));
+        }
+        Assertions.assertEquals(inputCrc.getValue(), outputCrc.getValue());
+
+        Files.delete(zipFilePath);
+    }
 }